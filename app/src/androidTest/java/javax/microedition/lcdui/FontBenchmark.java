@@ -0,0 +1,119 @@
+package javax.microedition.lcdui;
+
+import android.graphics.Color;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Menu-like text workload: 200 short labels measured and drawn every frame.
+ * Times are written to the log under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FontBenchmark {
+	private static final String TAG = FontBenchmark.class.getName();
+
+	private static final int STRINGS = 200;
+	private static final int FRAMES = 100;
+	private static final int WIDTH = 240;
+	private static final int HEIGHT = 320;
+
+	private final String[] labels = new String[STRINGS];
+	private Font font;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < STRINGS; i++) {
+			labels[i] = (i % 2 == 0 ? "Menu item " : "Настройки ") + i;
+		}
+		font = Font.getFont(Font.FACE_SYSTEM, Font.STYLE_PLAIN, Font.SIZE_SMALL);
+	}
+
+	@Test
+	public void measure() {
+		for (String label : labels) {
+			assertEquals((int) Math.ceil(font.paint.measureText(label)), font.stringWidth(label));
+			assertEquals((int) font.paint.measureText(label, 2, 7), font.substringWidth(label, 2, 5));
+		}
+
+		long start = System.nanoTime();
+		int sum = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (String label : labels) {
+				sum += (int) Math.ceil(font.paint.measureText(label));
+			}
+		}
+		long measureText = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (String label : labels) {
+				sum -= font.stringWidth(label);
+			}
+		}
+		long stringWidth = System.nanoTime() - start;
+
+		assertEquals(0, sum);
+		Log.i(TAG, "measure, us per frame: Paint.measureText " + measureText / FRAMES / 1000
+				+ ", Font.stringWidth " + stringWidth / FRAMES / 1000);
+	}
+
+	@Test
+	public void draw() {
+		Image screen = Image.createImage(WIDTH, HEIGHT);
+		Graphics g = screen.getGraphics();
+		g.setFont(font);
+		int lineHeight = font.getHeight();
+
+		// pre-rendered labels, the best case for a glyph atlas: one blit per string
+		Image[] rendered = new Image[STRINGS];
+		for (int i = 0; i < STRINGS; i++) {
+			rendered[i] = Image.createImage(font.stringWidth(labels[i]), lineHeight, Color.TRANSPARENT);
+			Graphics lg = rendered[i].getGraphics();
+			lg.setFont(font);
+			lg.drawString(labels[i], 0, 0, Graphics.TOP | Graphics.LEFT);
+		}
+
+		// warm up the glyph caches
+		drawText(g, lineHeight);
+		drawImages(g, rendered, lineHeight);
+
+		long start = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			drawText(g, lineHeight);
+		}
+		long drawText = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			drawImages(g, rendered, lineHeight);
+		}
+		long drawImage = System.nanoTime() - start;
+
+		Log.i(TAG, "draw, us per frame: Graphics.drawString " + drawText / FRAMES / 1000
+				+ ", pre-rendered drawImage " + drawImage / FRAMES / 1000);
+	}
+
+	private void drawText(Graphics g, int lineHeight) {
+		g.setColor(0xFFFFFF);
+		g.fillRect(0, 0, WIDTH, HEIGHT);
+		for (int i = 0; i < STRINGS; i++) {
+			g.setColor(i % 3 == 0 ? 0xFF0000 : 0);
+			g.drawString(labels[i], (i / 20) * 24, (i % 20) * lineHeight, Graphics.TOP | Graphics.LEFT);
+		}
+	}
+
+	private void drawImages(Graphics g, Image[] rendered, int lineHeight) {
+		g.setColor(0xFFFFFF);
+		g.fillRect(0, 0, WIDTH, HEIGHT);
+		for (int i = 0; i < STRINGS; i++) {
+			g.drawImage(rendered[i], (i / 20) * 24, (i % 20) * lineHeight, Graphics.TOP | Graphics.LEFT);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package javax.microedition.lcdui.event;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class EventQueueTest {
+	private final EventQueue queue = new EventQueue();
+	private final List<Integer> processed = new ArrayList<>();
+	private int queued;
+	private int recycled;
+
+	@After
+	public void tearDown() {
+		queue.stopProcessing();
+	}
+
+	@Test
+	public void eventsKeepOrderBeyondCapacity() throws InterruptedException {
+		int count = EventQueue.CAPACITY * 3;
+		CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			queue.postEvent(new TestEvent(i, done));
+		}
+		assertEquals(count, queue.size());
+		assertEquals(count, queued);
+
+		queue.startProcessing();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertOrdered(count);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void callbacksCanOverfillQueue() throws InterruptedException {
+		final int count = EventQueue.CAPACITY + 100;
+		final CountDownLatch finished = new CountDownLatch(count);
+		queue.startProcessing();
+		queue.postEvent(new TestEvent(-1, null) {
+			@Override
+			public void process() {
+				// the event loop itself fills the ring, it must not wait for itself
+				for (int i = 0; i < count; i++) {
+					queue.postEvent(new TestEvent(i, finished));
+				}
+			}
+		});
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertOrdered(count);
+	}
+
+	@Test
+	public void repeatedEventsAreCoalesced() {
+		queue.postEvent(new TestEvent(0, null));
+		queue.postEvent(new CoalescedEvent(1));
+		queue.postEvent(new CoalescedEvent(2));
+		queue.postEvent(new CoalescedEvent(3));
+		assertEquals(2, queue.size());
+		assertEquals(2, recycled);
+
+		queue.postEvent(new TestEvent(4, null));
+		queue.postEvent(new CoalescedEvent(5));
+		assertEquals(4, queue.size());
+	}
+
+	@Test
+	public void firstEventIsNeverCoalesced() {
+		queue.postEvent(new CoalescedEvent(0));
+		assertEquals(1, queue.size());
+		assertEquals(0, recycled);
+	}
+
+	@Test
+	public void clearEmptiesRingAndOverflow() {
+		int count = EventQueue.CAPACITY + 10;
+		for (int i = 0; i < count; i++) {
+			queue.postEvent(new TestEvent(i, null));
+		}
+		queue.clear();
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+		assertEquals(0, queued);
+		assertEquals(count, recycled);
+		assertTrue(processed.isEmpty());
+	}
+
+	@Test
+	public void latencyIsMeasuredAtDispatch() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(2);
+		queue.postEvent(new TestEvent(0, done));
+		queue.postEvent(new TestEvent(1, done));
+		Thread.sleep(50);
+		queue.startProcessing();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		assertEquals(2, queue.getProcessedCount());
+		assertTrue(queue.getMaxLatency() >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertTrue(queue.getTotalLatency() >= 2 * TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	private void assertOrdered(int count) {
+		synchronized (processed) {
+			assertEquals(count, processed.size());
+			for (int i = 0; i < count; i++) {
+				assertEquals(i, (int) processed.get(i));
+			}
+		}
+	}
+
+	private class TestEvent extends Event {
+		final int id;
+		final CountDownLatch done;
+
+		TestEvent(int id, CountDownLatch done) {
+			this.id = id;
+			this.done = done;
+		}
+
+		@Override
+		public void process() {
+			synchronized (processed) {
+				processed.add(id);
+			}
+			if (done != null) {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public void recycle() {
+			recycled++;
+		}
+
+		@Override
+		public void enterQueue() {
+			queued++;
+		}
+
+		@Override
+		public void leaveQueue() {
+			queued--;
+		}
+
+		@Override
+		public boolean placeableAfter(Event event) {
+			return true;
+		}
+	}
+
+	/** Like a repaint, dropped if the same kind of event is already waiting */
+	private class CoalescedEvent extends TestEvent {
+		CoalescedEvent(int id) {
+			super(id, null);
+		}
+
+		@Override
+		public boolean placeableAfter(Event event) {
+			return !(event instanceof CoalescedEvent);
+		}
+	}
+}
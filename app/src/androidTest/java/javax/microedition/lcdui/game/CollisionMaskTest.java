@@ -0,0 +1,142 @@
+package javax.microedition.lcdui.game;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CollisionMaskTest {
+
+	private static final int[] TRANSFORMS = {
+			Sprite.TRANS_NONE, Sprite.TRANS_ROT90, Sprite.TRANS_ROT180, Sprite.TRANS_ROT270,
+			Sprite.TRANS_MIRROR, Sprite.TRANS_MIRROR_ROT90,
+			Sprite.TRANS_MIRROR_ROT180, Sprite.TRANS_MIRROR_ROT270
+	};
+
+	private final Random random = new Random(0x5eed);
+
+	@Test
+	public void immutableImages() {
+		// widths above 32 span several mask words, odd ones leave a partial last word
+		Image image1 = Image.createRGBImage(createPixels(37, 21), 37, 21, true);
+		Image image2 = Image.createRGBImage(createPixels(70, 33), 70, 33, true);
+		checkAllTransforms(image1, image2);
+	}
+
+	@Test
+	public void mutableImages() {
+		Image image1 = createMutableImage(45, 19);
+		Image image2 = createMutableImage(23, 40);
+		checkAllTransforms(image1, image2);
+	}
+
+	@Test
+	public void mutableImageChanges() {
+		Image image1 = Image.createImage(16, 16, 0);
+		Image image2 = Image.createRGBImage(createPixels(16, 16, 0xFF000000), 16, 16, true);
+		assertFalse(CollisionMask.collides(0, 0, 0, 0, image1, 0, image2, 0, 16, 16));
+
+		// a mutable image must not be served from the mask cache
+		Graphics g = image1.getGraphics();
+		g.setColor(0xFF0000);
+		g.fillRect(5, 7, 1, 1);
+		assertTrue(CollisionMask.collides(0, 0, 0, 0, image1, 0, image2, 0, 16, 16));
+	}
+
+	private void checkAllTransforms(Image image1, Image image2) {
+		for (int transform1 : TRANSFORMS) {
+			for (int transform2 : TRANSFORMS) {
+				for (int i = 0; i < 20; i++) {
+					boolean inverted1 = (transform1 & Sprite.INVERTED_AXES) != 0;
+					boolean inverted2 = (transform2 & Sprite.INVERTED_AXES) != 0;
+					int max1W = inverted1 ? image1.getHeight() : image1.getWidth();
+					int max1H = inverted1 ? image1.getWidth() : image1.getHeight();
+					int max2W = inverted2 ? image2.getHeight() : image2.getWidth();
+					int max2H = inverted2 ? image2.getWidth() : image2.getHeight();
+					int width = 1 + random.nextInt(Math.min(max1W, max2W));
+					int height = 1 + random.nextInt(Math.min(max1H, max2H));
+					int regionW1 = inverted1 ? height : width;
+					int regionH1 = inverted1 ? width : height;
+					int regionW2 = inverted2 ? height : width;
+					int regionH2 = inverted2 ? width : height;
+					int x1 = random.nextInt(image1.getWidth() - regionW1 + 1);
+					int y1 = random.nextInt(image1.getHeight() - regionH1 + 1);
+					int x2 = random.nextInt(image2.getWidth() - regionW2 + 1);
+					int y2 = random.nextInt(image2.getHeight() - regionH2 + 1);
+
+					String message = "transforms " + transform1 + "/" + transform2
+							+ ", offsets " + x1 + "," + y1 + " " + x2 + "," + y2
+							+ ", size " + width + "x" + height;
+					assertEquals(message,
+							collides(x1, y1, x2, y2, image1, transform1, image2, transform2, width, height),
+							CollisionMask.collides(x1, y1, x2, y2, image1, transform1, image2, transform2, width, height));
+				}
+			}
+		}
+	}
+
+	private Image createMutableImage(int width, int height) {
+		Image image = Image.createImage(width, height, 0);
+		image.getGraphics().drawRGB(createPixels(width, height), 0, width, 0, 0, width, height, true);
+		return image;
+	}
+
+	private int[] createPixels(int width, int height) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			// sparse enough that some regions do not collide
+			pixels[i] = random.nextInt(16) == 0 ? 0xFFFF0000 : 0;
+		}
+		return pixels;
+	}
+
+	private static int[] createPixels(int width, int height, int argb) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = argb;
+		}
+		return pixels;
+	}
+
+	/** Per-pixel reference, maps every screen pixel back into both images */
+	private static boolean collides(int image1XOffset, int image1YOffset,
+									int image2XOffset, int image2YOffset,
+									Image image1, int transform1,
+									Image image2, int transform2,
+									int width, int height) {
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (isOpaque(image1, image1XOffset, image1YOffset, transform1, col, row, width, height)
+						&& isOpaque(image2, image2XOffset, image2YOffset, transform2, col, row, width, height)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isOpaque(Image image, int xOffset, int yOffset, int transform,
+									int col, int row, int width, int height) {
+		int x, y;
+		if ((transform & Sprite.INVERTED_AXES) != 0) {
+			x = (transform & Sprite.X_FLIP) != 0 ? height - 1 - row : row;
+			y = (transform & Sprite.Y_FLIP) != 0 ? width - 1 - col : col;
+		} else {
+			x = (transform & Sprite.X_FLIP) != 0 ? width - 1 - col : col;
+			y = (transform & Sprite.Y_FLIP) != 0 ? height - 1 - row : row;
+		}
+		int[] argb = new int[1];
+		image.getRGB(argb, 0, 1, xOffset + x, yOffset + y, 1, 1);
+		return (argb[0] & 0xFF000000) == 0xFF000000;
+	}
+}
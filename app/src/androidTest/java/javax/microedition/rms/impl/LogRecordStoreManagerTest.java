@@ -0,0 +1,134 @@
+package javax.microedition.rms.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+import ru.playsoftware.j2meloader.util.FileUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class LogRecordStoreManagerTest {
+	private static final String NAME = "test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File dir;
+	private File logFile;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = folder.newFolder();
+		logFile = new File(dir, NAME + ".rsl");
+	}
+
+	@Test
+	public void replay() throws Exception {
+		RecordStore rs = new LogRecordStoreManager(dir).openRecordStore(NAME, true);
+		int id1 = rs.addRecord(new byte[]{1, 2, 3}, 0, 3);
+		int id2 = rs.addRecord(new byte[]{4, 5}, 0, 2);
+		int id3 = rs.addRecord(new byte[]{6}, 0, 1);
+		rs.setRecord(id1, new byte[]{7, 8}, 0, 2);
+		rs.deleteRecord(id2);
+		int version = rs.getVersion();
+		rs.closeRecordStore();
+
+		rs = new LogRecordStoreManager(dir).openRecordStore(NAME, false);
+		assertEquals(2, rs.getNumRecords());
+		assertArrayEquals(new byte[]{7, 8}, rs.getRecord(id1));
+		assertArrayEquals(new byte[]{6}, rs.getRecord(id3));
+		assertEquals(version, rs.getVersion());
+		assertEquals(id3 + 1, rs.getNextRecordID());
+	}
+
+	@Test
+	public void tornTailIsDropped() throws Exception {
+		RecordStore rs = new LogRecordStoreManager(dir).openRecordStore(NAME, true);
+		int id = rs.addRecord(new byte[]{1, 2, 3}, 0, 3);
+		rs.closeRecordStore();
+		long length = logFile.length();
+		// an entry cut off in the middle of the write
+		try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
+			fos.write(new byte[]{2, 0, 0, 0, 100, 1, 2, 3});
+		}
+
+		rs = new LogRecordStoreManager(dir).openRecordStore(NAME, false);
+		assertEquals(1, rs.getNumRecords());
+		assertArrayEquals(new byte[]{1, 2, 3}, rs.getRecord(id));
+		assertEquals(length, logFile.length());
+
+		int id2 = rs.addRecord(new byte[]{4}, 0, 1);
+		rs.closeRecordStore();
+		rs = new LogRecordStoreManager(dir).openRecordStore(NAME, false);
+		assertEquals(2, rs.getNumRecords());
+		assertArrayEquals(new byte[]{4}, rs.getRecord(id2));
+	}
+
+	@Test
+	public void damagedLogIsKept() throws Exception {
+		RecordStore rs = new LogRecordStoreManager(dir).openRecordStore(NAME, true);
+		rs.addRecord(new byte[]{1, 2, 3}, 0, 3);
+		rs.addRecord(new byte[]{4, 5, 6}, 0, 3);
+		rs.closeRecordStore();
+		// payload of the first entry, followed by valid entries
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			raf.seek(30);
+			raf.write(0x55);
+		}
+		byte[] damaged = FileUtils.getBytes(logFile);
+
+		LogRecordStoreManager manager = new LogRecordStoreManager(dir);
+		try {
+			manager.openRecordStore(NAME, true);
+			fail("Damaged log opened");
+		} catch (RecordStoreException expected) {
+		}
+		assertFalse(logFile.exists());
+		File[] broken = dir.listFiles((d, name) -> name.endsWith(".broken"));
+		assertNotNull(broken);
+		assertEquals(1, broken.length);
+		assertArrayEquals(damaged, FileUtils.getBytes(broken[0]));
+
+		rs = manager.openRecordStore(NAME, true);
+		assertEquals(0, rs.getNumRecords());
+	}
+
+	@Test
+	public void compaction() throws Exception {
+		RecordStore rs = new LogRecordStoreManager(dir).openRecordStore(NAME, true);
+		byte[] data = new byte[4096];
+		int id = rs.addRecord(data, 0, data.length);
+		int other = rs.addRecord(new byte[]{1}, 0, 1);
+		for (int i = 0; i < 64; i++) {
+			data[0] = (byte) i;
+			rs.setRecord(id, data, 0, data.length);
+		}
+		rs.closeRecordStore();
+		// without compaction the log would hold all the 65 versions of the record
+		assertTrue(logFile.length() < 64 * 1024 + 2 * data.length);
+
+		rs = new LogRecordStoreManager(dir).openRecordStore(NAME, false);
+		assertEquals(2, rs.getNumRecords());
+		assertArrayEquals(data, rs.getRecord(id));
+		assertArrayEquals(new byte[]{1}, rs.getRecord(other));
+	}
+}
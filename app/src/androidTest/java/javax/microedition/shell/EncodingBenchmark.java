@@ -0,0 +1,97 @@
+package javax.microedition.shell;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.UnsupportedEncodingException;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Dialogue-like text workload: short strings decoded from bytes, as done by the
+ * instrumented {@code new String(byte[])} calls. Compares the per-call property
+ * lookup the instrumentation used before with the cached charset.
+ * Times are written to the log under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EncodingBenchmark {
+	private static final String TAG = EncodingBenchmark.class.getName();
+	private static final String ENCODING = "microedition.encoding";
+
+	private static final int STRINGS = 1000;
+	private static final int ROUNDS = 20;
+
+	private final byte[][] lines = new byte[STRINGS][];
+	private String savedEncoding;
+
+	@Before
+	public void setUp() throws UnsupportedEncodingException {
+		savedEncoding = System.getProperty(ENCODING);
+		System.setProperty(ENCODING, "UTF-8");
+		MidletSystem.setProperty(ENCODING, null);
+		for (int i = 0; i < STRINGS; i++) {
+			String line = (i % 2 == 0 ? "Quest log entry " : "Запись журнала ") + i;
+			lines[i] = line.getBytes("UTF-8");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		if (savedEncoding == null) {
+			System.clearProperty(ENCODING);
+		} else {
+			System.setProperty(ENCODING, savedEncoding);
+		}
+		MidletSystem.setProperty(ENCODING, savedEncoding);
+	}
+
+	@Test
+	public void decode() throws UnsupportedEncodingException {
+		for (byte[] line : lines) {
+			assertEquals(new String(line, System.getProperty(ENCODING)),
+					new String(line, MidletSystem.getEncoding()));
+		}
+
+		// warm up both paths
+		int length = decodeByName() - decodeByCharset();
+
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			length += decodeByName();
+		}
+		long byName = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			length -= decodeByCharset();
+		}
+		long byCharset = System.nanoTime() - start;
+
+		assertEquals(0, length);
+		Log.i(TAG, "decode, ns per string: System.getProperty + name " + byName / ROUNDS / STRINGS
+				+ ", MidletSystem.getEncoding " + byCharset / ROUNDS / STRINGS);
+	}
+
+	/** The code the instrumentation generated before: a property lookup per call */
+	private int decodeByName() throws UnsupportedEncodingException {
+		int length = 0;
+		for (byte[] line : lines) {
+			length += new String(line, System.getProperty(ENCODING)).length();
+		}
+		return length;
+	}
+
+	private int decodeByCharset() {
+		int length = 0;
+		for (byte[] line : lines) {
+			length += new String(line, MidletSystem.getEncoding()).length();
+		}
+		return length;
+	}
+}
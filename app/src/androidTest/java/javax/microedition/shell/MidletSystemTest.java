@@ -0,0 +1,70 @@
+package javax.microedition.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class MidletSystemTest {
+	private static final String ENCODING = "microedition.encoding";
+
+	private String savedEncoding;
+
+	@Before
+	public void setUp() {
+		savedEncoding = System.getProperty(ENCODING);
+	}
+
+	@After
+	public void tearDown() {
+		if (savedEncoding == null) {
+			System.clearProperty(ENCODING);
+		} else {
+			System.setProperty(ENCODING, savedEncoding);
+		}
+		MidletSystem.setProperty(ENCODING, savedEncoding);
+	}
+
+	@Test
+	public void encodingFollowsProperty() {
+		setEncoding("UTF-8");
+		assertEquals(Charset.forName("UTF-8"), MidletSystem.getEncoding());
+		assertEquals("UTF-8", MidletSystem.getEncodingName());
+
+		setEncoding("windows-1251");
+		assertEquals(Charset.forName("windows-1251"), MidletSystem.getEncoding());
+		assertEquals("windows-1251", MidletSystem.getEncodingName());
+	}
+
+	@Test
+	public void encodingIsResolvedOnce() {
+		setEncoding("UTF-8");
+		Charset charset = MidletSystem.getEncoding();
+		// only changes made through MidletSystem are tracked
+		System.setProperty(ENCODING, "windows-1251");
+		assertSame(charset, MidletSystem.getEncoding());
+	}
+
+	@Test
+	public void unsupportedEncodingFallsBack() {
+		setEncoding("no-such-charset");
+		assertEquals(Charset.forName("ISO-8859-1"), MidletSystem.getEncoding());
+
+		System.clearProperty(ENCODING);
+		MidletSystem.setProperty(ENCODING, null);
+		assertEquals(Charset.forName("ISO-8859-1"), MidletSystem.getEncoding());
+	}
+
+	private static void setEncoding(String name) {
+		System.setProperty(ENCODING, name);
+		MidletSystem.setProperty(ENCODING, name);
+	}
+}
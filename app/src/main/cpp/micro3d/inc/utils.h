@@ -67,6 +67,22 @@ JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_transform
          jobject, jobject,
          jobject, jfloatArray);
 
+/*
+ * Class:     com_mascotcapsule_micro3d_v3_Utils
+ * Method:    glTexSubImage2D
+ * Signature: (IIIILandroid/graphics/Bitmap;)V
+ */
+JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_glTexSubImage2D
+        (JNIEnv *, jclass, jint, jint, jint, jint, jobject);
+
+/*
+ * Class:     com_mascotcapsule_micro3d_v3_Utils
+ * Method:    copyPixels
+ * Signature: (Ljava/nio/Buffer;IIIILandroid/graphics/Bitmap;)V
+ */
+JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_copyPixels
+        (JNIEnv *, jclass, jobject, jint, jint, jint, jint, jobject);
+
 #define  LOG_TAG    "micro3d"
 #define  LOGE(...)  __android_log_print(ANDROID_LOG_ERROR,LOG_TAG,__VA_ARGS__);
 #define MICRO3D_RAISE_EXCEPTION(aEnv, aException, aMsg){\
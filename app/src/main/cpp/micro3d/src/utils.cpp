@@ -66,6 +66,90 @@ JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_glReadPixels
     }
 }
 
+JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_glTexSubImage2D
+        (JNIEnv *env, jclass /*clazz*/,
+         jint x, jint y, jint width, jint height, jobject bitmap_buffer) {
+    int ret;
+    AndroidBitmapInfo info;
+    ret = AndroidBitmap_getInfo(env, bitmap_buffer, &info);
+    if (ret < 0) {
+        LOGE("AndroidBitmap_getInfo() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_getInfo() failed!")
+        return;
+    }
+    void *pixels;
+    ret = AndroidBitmap_lockPixels(env, bitmap_buffer, &pixels);
+    if (ret < 0) {
+        LOGE("AndroidBitmap_lockPixels() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_lockPixels() failed!")
+        return;
+    }
+    const uint32_t bw = info.width;
+    const uint32_t bs = info.stride;
+    if (x == 0 && width == bw && bs == bw * 4) {
+        pixels = ((uint8_t *) pixels) + bs * y;
+        glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+    } else {
+        pixels = ((uint8_t *) pixels) + x * 4 /*RGBA*/ + bs * y;
+        for (int i = 0; i < height; ++i) {
+            glTexSubImage2D(GL_TEXTURE_2D, 0, x, y + i, width, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            pixels = ((uint8_t *) pixels) + bs;
+        }
+    }
+    ret = AndroidBitmap_unlockPixels(env, bitmap_buffer);
+    pixels = nullptr;
+    if (ret < 0) {
+        LOGE("AndroidBitmap_unlockPixels() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_unlockPixels() failed!")
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_mascotcapsule_micro3d_v3_Utils_copyPixels
+        (JNIEnv *env, jclass /*clazz*/, jobject src,
+         jint x, jint y, jint width, jint height, jobject bitmap_buffer) {
+    auto srcPtr = static_cast<uint8_t *>(env->GetDirectBufferAddress(src));
+    if (srcPtr == nullptr) {
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalArgumentException",
+                                "Buffer is not direct")
+        return;
+    }
+    int ret;
+    AndroidBitmapInfo info;
+    ret = AndroidBitmap_getInfo(env, bitmap_buffer, &info);
+    if (ret < 0) {
+        LOGE("AndroidBitmap_getInfo() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_getInfo() failed!")
+        return;
+    }
+    void *pixels;
+    ret = AndroidBitmap_lockPixels(env, bitmap_buffer, &pixels);
+    if (ret < 0) {
+        LOGE("AndroidBitmap_lockPixels() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_lockPixels() failed!")
+        return;
+    }
+    const uint32_t bs = info.stride;
+    const size_t rowSize = width * 4 /*RGBA*/;
+    auto dst = ((uint8_t *) pixels) + x * 4 + bs * y;
+    for (int i = 0; i < height; ++i) {
+        memcpy(dst, srcPtr, rowSize);
+        srcPtr += rowSize;
+        dst += bs;
+    }
+    ret = AndroidBitmap_unlockPixels(env, bitmap_buffer);
+    pixels = nullptr;
+    if (ret < 0) {
+        LOGE("AndroidBitmap_unlockPixels() failed! error=%d", ret)
+        MICRO3D_RAISE_EXCEPTION(env, "java/lang/IllegalStateException",
+                                "AndroidBitmap_unlockPixels() failed!")
+    }
+}
+
 JNIEXPORT void JNICALL
 Java_com_mascotcapsule_micro3d_v3_Utils_transform(JNIEnv *env, jclass /*clazz*/,
                                                   jobject src_vertices,
@@ -33,7 +33,7 @@ public class ActionTable {
 			throw new NullPointerException();
 		}
 		try {
-			actions = Loader.loadMtraData(b);
+			actions = load(b);
 		} catch (IOException e) {
 			Log.e(TAG, "Error loading data", e);
 			throw new RuntimeException(e);
@@ -49,13 +49,26 @@ public class ActionTable {
 			throw new IOException();
 		}
 		try {
-			actions = Loader.loadMtraData(bytes);
+			actions = load(bytes);
 		} catch (IOException e) {
 			Log.e(TAG, "Error loading data from [" + name + "]", e);
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Actions are shared by the tables loaded from the same data, the frame state
+	 * of the bones is changed only under the lock of {@link Action#matrices}.
+	 */
+	private static Action[] load(byte[] bytes) throws IOException {
+		String key = AssetCache.getKey(bytes);
+		Action[] actions = AssetCache.ACTIONS.get(key);
+		if (actions == null) {
+			actions = AssetCache.ACTIONS.put(key, Loader.loadMtraData(bytes));
+		}
+		return actions;
+	}
+
 	public final void dispose() {
 		actions = null;
 	}
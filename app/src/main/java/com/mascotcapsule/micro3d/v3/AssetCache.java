@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2020 Yury Kharchenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mascotcapsule.micro3d.v3;
+
+import java.lang.ref.SoftReference;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Cache of the parsed assets, keyed by the hash of the file content.
+ * <p>
+ * Games often create the figures, actions and textures again from the same files,
+ * e.g. on every level. The parsed data is immutable and shared, and is kept
+ * while there is enough memory.
+ */
+final class AssetCache<T> {
+	static final AssetCache<Model> MODELS = new AssetCache<>();
+	static final AssetCache<Action[]> ACTIONS = new AssetCache<>();
+	static final AssetCache<Texture.Data> TEXTURES = new AssetCache<>();
+
+	private final HashMap<String, SoftReference<T>> entries = new HashMap<>();
+	private int purgeThreshold = 16;
+
+	private AssetCache() {
+	}
+
+	synchronized T get(String key) {
+		SoftReference<T> ref = entries.get(key);
+		return ref == null ? null : ref.get();
+	}
+
+	synchronized T put(String key, T value) {
+		if (entries.size() >= purgeThreshold) {
+			for (Iterator<SoftReference<T>> it = entries.values().iterator(); it.hasNext(); ) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+			purgeThreshold = Math.max(16, entries.size() * 2);
+		}
+		entries.put(key, new SoftReference<>(value));
+		return value;
+	}
+
+	static String getKey(byte[] data) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(data);
+			return String.format("%064x", new BigInteger(1, digest.digest()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -38,6 +38,8 @@ public class Figure {
 	Texture[] textures;
 	int selectedTex = -1;
 	int currentPattern;
+	/** Pattern of the polygons in the index array, -1 until a pattern is applied */
+	private int appliedPattern = -1;
 
 	@SuppressWarnings("unused")
 	public Figure(byte[] b) {
@@ -67,11 +69,17 @@ public class Figure {
 	}
 
 	private synchronized void init(byte[] bytes) throws IOException {
-		data = Loader.loadMbacData(bytes);
-		Utils.transform(data.originalVertices, data.vertices,
-				data.originalNormals, data.normals, data.bones, null);
-		sortPolygons();
-		fillTexCoordBuffer();
+		String key = AssetCache.getKey(bytes);
+		Model model = AssetCache.MODELS.get(key);
+		if (model == null) {
+			model = Loader.loadMbacData(bytes);
+			model.setPose(null);
+			sortPolygons(model);
+			fillTexCoordBuffer(model);
+			model.applySkinning();
+			AssetCache.MODELS.put(key, model);
+		}
+		data = new Model(model);
 	}
 
 	@SuppressWarnings("unused")
@@ -79,7 +87,7 @@ public class Figure {
 		data = null;
 	}
 
-	private void sortPolygons() {
+	private static void sortPolygons(Model data) {
 		Model.Polygon[] polygonsT = data.polygonsT;
 		Arrays.sort(polygonsT, (a, b) -> {
 			int cmp = Integer.compare(a.blendMode, b.blendMode);
@@ -139,7 +147,8 @@ public class Figure {
 	}
 
 	private void applyPattern() {
-		int[] indexArray = data.indices;
+		appliedPattern = currentPattern;
+		int[] indexArray = data.getWritableIndices();
 		int pos = 0;
 		int invalid = data.vertices.capacity() / 3 - 1;
 		for (Model.Polygon p : data.polygonsT) {
@@ -237,12 +246,11 @@ public class Figure {
 			for (final Action.Bone actionBone : actionBones) {
 				actionBone.setFrame(frame);
 			}
-			Utils.transform(data.originalVertices, data.vertices,
-					data.originalNormals, data.normals, data.bones, act.matrices);
+			data.setPose(act.matrices);
 		}
 	}
 
-	private void fillTexCoordBuffer() {
+	private static void fillTexCoordBuffer(Model data) {
 		ByteBuffer buffer = data.texCoordArray;
 		buffer.rewind();
 		for (Model.Polygon poly : data.polygonsT) {
@@ -261,6 +269,7 @@ public class Figure {
 			data.vertexArray = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
 					.order(ByteOrder.nativeOrder()).asFloatBuffer();
 		}
+		data.applySkinning();
 		Utils.fillBuffer(data.vertexArray, data.vertices, data.indices);
 		return data.vertexArray;
 	}
@@ -273,7 +282,18 @@ public class Figure {
 			data.normalsArray = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
 					.order(ByteOrder.nativeOrder()).asFloatBuffer();
 		}
+		data.applySkinning();
 		Utils.fillBuffer(data.normalsArray, data.normals, data.indices);
 		return data.normalsArray;
 	}
+
+	/**
+	 * Copies the bone matrices of the current posture, for the GPU skinning.
+	 *
+	 * @return pattern of the visible polygons, -1 for all the polygons
+	 */
+	synchronized int getPosture(float[] boneMatrices) {
+		System.arraycopy(data.boneMatrices, 0, boneMatrices, 0, data.boneMatrices.length);
+		return appliedPattern;
+	}
 }
@@ -19,6 +19,7 @@ package com.mascotcapsule.micro3d.v3;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 class Model {
 
@@ -35,13 +36,29 @@ class Model {
 	FloatBuffer originalNormals;
 	final Polygon[] polygonsC;
 	final Polygon[] polygonsT;
-	final FloatBuffer vertices;
+	FloatBuffer vertices;
 	final int vertexArrayCapacity;
 	final int[][][] subMeshesLengthsT;
 	final int[][] subMeshesLengthsC;
 	int numVerticesPolyT;
-	final int[] indices;
+	int[] indices;
 	final ByteBuffer bones;
+	final int numBones;
+	/** Bone matrices of the current posture multiplied by the parents, 3x4 per bone */
+	final float[] boneMatrices;
+	/** Vertices in the bone space expanded by the polygons, with the bone index as w */
+	FloatBuffer bindPoseArray;
+	FloatBuffer bindPoseNormalsArray;
+	private int bindPosePattern;
+	/** Buffer objects of the model, owned by {@link Render} */
+	final int[] buffers = new int[5];
+	private int[] rangesT;
+	private int[] rangesC;
+	private float[] actionMatrices;
+	private boolean skinningChanged;
+	private int[] vertexBones;
+	/** Model with the parsed data shared by this one, also keeps it in {@link AssetCache} */
+	private final Model source;
 
 	Model(int vertices, int numBones, int patterns, int numTextures,
 		  int polyT3, int polyT4, int polyC3, int polyC4) {
@@ -64,6 +81,251 @@ class Model {
 		this.vertices = ByteBuffer.allocateDirect(i * 4).order(order).asFloatBuffer();
 		this.vertices.put(--i, Float.POSITIVE_INFINITY);
 		bones = ByteBuffer.allocateDirect(numBones * (12 + 2) * 4).order(order);
+		this.numBones = numBones;
+		boneMatrices = new float[numBones * 12];
+		source = null;
+	}
+
+	/**
+	 * Creates a model sharing the parsed data of the given one, which must not be changed
+	 * after that. The skinned vertices and the index array are copied on the first write.
+	 */
+	Model(Model src) {
+		source = src;
+		numPatterns = src.numPatterns;
+		numTextures = src.numTextures;
+		hasPolyC = src.hasPolyC;
+		hasPolyT = src.hasPolyT;
+		texCoordArray = src.texCoordArray;
+		originalVertices = src.originalVertices;
+		originalNormals = src.originalNormals;
+		polygonsC = src.polygonsC;
+		polygonsT = src.polygonsT;
+		vertexArrayCapacity = src.vertexArrayCapacity;
+		subMeshesLengthsT = src.subMeshesLengthsT;
+		subMeshesLengthsC = src.subMeshesLengthsC;
+		numVerticesPolyT = src.numVerticesPolyT;
+		bones = src.bones;
+		numBones = src.numBones;
+		vertices = src.vertices;
+		normals = src.normals;
+		indices = src.indices;
+		boneMatrices = src.boneMatrices.clone();
+		actionMatrices = src.actionMatrices == null ? null : src.actionMatrices.clone();
+		skinningChanged = src.skinningChanged;
+	}
+
+	/**
+	 * Sets the posture of the bones. Only the bone matrices are calculated here,
+	 * the vertices are skinned on the GPU or on demand by {@link #applySkinning()}.
+	 *
+	 * @param actions action matrices of the bones, or null for the initial posture
+	 */
+	void setPose(float[] actions) {
+		if (actions == null) {
+			actionMatrices = null;
+		} else {
+			if (actionMatrices == null || actionMatrices.length != actions.length) {
+				actionMatrices = new float[actions.length];
+			}
+			System.arraycopy(actions, 0, actionMatrices, 0, actions.length);
+		}
+		float[] m = boneMatrices;
+		int numActions = actions == null ? 0 : actions.length / 12;
+		for (int i = 0; i < numBones; i++) {
+			int offset = i * (12 + 2) * 4;
+			int parent = bones.getInt(offset + 4);
+			int mo = i * 12;
+			for (int j = 0; j < 12; j++) {
+				m[mo + j] = bones.getFloat(offset + 8 + j * 4);
+			}
+			if (parent != -1) {
+				Utils.multiplyMM(m, mo, m, parent * 12, m, mo);
+			}
+			if (i < numActions) {
+				Utils.multiplyMM(m, mo, m, mo, actionMatrices, i * 12);
+			}
+		}
+		skinningChanged = true;
+	}
+
+	/**
+	 * Skins the vertices and normals on the CPU, if the posture has changed.
+	 */
+	void applySkinning() {
+		if (!skinningChanged) {
+			return;
+		}
+		if (source != null && vertices == source.vertices) {
+			vertices = copyOf(vertices);
+			if (normals != null) {
+				normals = copyOf(normals);
+			}
+		}
+		Utils.transform(originalVertices, vertices, originalNormals, normals, bones, actionMatrices);
+		skinningChanged = false;
+	}
+
+	/**
+	 * @return the index array for changing the pattern, copied if shared with the source model
+	 */
+	int[] getWritableIndices() {
+		if (source != null && indices == source.indices) {
+			indices = indices.clone();
+		}
+		return indices;
+	}
+
+	private static FloatBuffer copyOf(FloatBuffer src) {
+		FloatBuffer buffer = src.duplicate();
+		buffer.clear();
+		FloatBuffer copy = ByteBuffer.allocateDirect(buffer.capacity() * 4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		copy.put(buffer);
+		copy.clear();
+		return copy;
+	}
+
+	/**
+	 * Fills the bind pose arrays for the GPU skinning.
+	 *
+	 * @param pattern pattern of the visible polygons, -1 for all the polygons
+	 * @return false if the arrays are already filled for this pattern
+	 */
+	boolean fillBindPose(int pattern) {
+		if (bindPoseArray != null && bindPosePattern == pattern) {
+			return false;
+		}
+		int numVertices = indices.length;
+		ByteOrder order = ByteOrder.nativeOrder();
+		if (bindPoseArray == null) {
+			bindPoseArray = ByteBuffer.allocateDirect(numVertices * 4 * 4).order(order).asFloatBuffer();
+			if (originalNormals != null) {
+				bindPoseNormalsArray = ByteBuffer.allocateDirect(vertexArrayCapacity).order(order).asFloatBuffer();
+			}
+		}
+		bindPoseArray.rewind();
+		if (bindPoseNormalsArray != null) {
+			bindPoseNormalsArray.rewind();
+		}
+		for (Polygon p : polygonsT) {
+			putBindPose(p, pattern);
+		}
+		for (Polygon p : polygonsC) {
+			putBindPose(p, pattern);
+		}
+		bindPoseArray.rewind();
+		if (bindPoseNormalsArray != null) {
+			bindPoseNormalsArray.rewind();
+		}
+		bindPosePattern = pattern;
+		return true;
+	}
+
+	private void putBindPose(Polygon p, int pattern) {
+		int[] vertexBones = getVertexBones();
+		FloatBuffer dst = bindPoseArray;
+		FloatBuffer dstNormals = bindPoseNormalsArray;
+		int pp = p.pattern;
+		boolean visible = (pp & pattern) == pp;
+		for (int index : p.indices) {
+			int bone = vertexBones[index];
+			if (!visible || bone == -1) {
+				// collapsed into a point, so not rasterized
+				dst.put(0.0f).put(0.0f).put(0.0f).put(0.0f);
+				if (dstNormals != null) {
+					dstNormals.put(0.0f).put(0.0f).put(0.0f);
+				}
+				continue;
+			}
+			int i = index * 3;
+			FloatBuffer src = originalVertices;
+			dst.put(src.get(i)).put(src.get(i + 1)).put(src.get(i + 2)).put(bone);
+			if (dstNormals != null) {
+				src = originalNormals;
+				dstNormals.put(src.get(i)).put(src.get(i + 1)).put(src.get(i + 2));
+			}
+		}
+	}
+
+	/**
+	 * @return draw ranges of the textured polygons, by five values: blend mode,
+	 * texture, double face flag, first vertex and number of vertices
+	 */
+	int[] getRangesT() {
+		if (rangesT == null) {
+			int[] ranges = new int[4 * numTextures * 2 * 5];
+			int length = 0;
+			int pos = 0;
+			for (int blendMode = 0; blendMode < 4; blendMode++) {
+				int[][] mesh = subMeshesLengthsT[blendMode];
+				for (int face = 0; face < mesh.length; face++) {
+					for (int doubleFace = 0; doubleFace < 2; doubleFace++) {
+						int count = mesh[face][doubleFace];
+						if (count > 0) {
+							length = putRange(ranges, length, blendMode, face, doubleFace, pos, count);
+							pos += count;
+						}
+					}
+				}
+			}
+			rangesT = Arrays.copyOf(ranges, length);
+		}
+		return rangesT;
+	}
+
+	/**
+	 * @return draw ranges of the colored polygons, in the same format as {@link #getRangesT()}
+	 */
+	int[] getRangesC() {
+		if (rangesC == null) {
+			int[] ranges = new int[4 * 2 * 5];
+			int length = 0;
+			int pos = numVerticesPolyT;
+			for (int blendMode = 0; blendMode < 4; blendMode++) {
+				for (int doubleFace = 0; doubleFace < 2; doubleFace++) {
+					int count = subMeshesLengthsC[blendMode][doubleFace];
+					if (count > 0) {
+						length = putRange(ranges, length, blendMode, -1, doubleFace, pos, count);
+						pos += count;
+					}
+				}
+			}
+			rangesC = Arrays.copyOf(ranges, length);
+		}
+		return rangesC;
+	}
+
+	private static int putRange(int[] ranges, int offset, int blendMode, int face,
+								int doubleFace, int first, int count) {
+		ranges[offset++] = blendMode;
+		ranges[offset++] = face;
+		ranges[offset++] = doubleFace;
+		ranges[offset++] = first;
+		ranges[offset++] = count;
+		return offset;
+	}
+
+	/**
+	 * @return index of the bone of every vertex, -1 for the vertices not bound to any bone
+	 */
+	private int[] getVertexBones() {
+		if (vertexBones == null) {
+			int numVertices = originalVertices.capacity() / 3;
+			int[] map = new int[numVertices];
+			int pos = 0;
+			for (int i = 0; i < numBones; i++) {
+				int length = bones.getInt(i * (12 + 2) * 4);
+				for (int j = 0; j < length && pos < numVertices; j++) {
+					map[pos++] = i;
+				}
+			}
+			while (pos < numVertices) {
+				map[pos++] = -1;
+			}
+			vertexBones = map;
+		}
+		return vertexBones;
 	}
 
 	static final class Polygon {
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2020 Yury Kharchenko
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.mascotcapsule.micro3d.v3;
+
+import static android.opengl.GLES30.*;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.nio.Buffer;
+
+/**
+ * Reads the rendered frames back through two pixel pack buffers (GLES 3).
+ * <p>
+ * The frame is read into one buffer without waiting for the GPU, and the frame read into
+ * the other buffer on the previous call is copied into the bitmap, so the bitmap shows the
+ * 3D scene with one frame of latency.
+ */
+@RequiresApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+class PixelBufferReader {
+	private final int[] buffers = new int[2];
+	private final int[] sizes = new int[2];
+	private final Rect[] rects = {new Rect(), new Rect()};
+	/** Bitmaps the buffers are read for, a frame is never copied into another one */
+	private final Bitmap[] targets = new Bitmap[2];
+	private final boolean[] pending = new boolean[2];
+	private int index;
+
+	/**
+	 * Starts reading the region of the framebuffer, and copies the previous frame to the bitmap.
+	 *
+	 * @return false if the previous frame was not read from the same region for the same bitmap,
+	 * the caller must then read the pixels synchronously
+	 */
+	boolean read(Rect rect, Bitmap bitmap) {
+		if (buffers[0] == 0) {
+			glGenBuffers(2, buffers, 0);
+		}
+		int x = rect.left;
+		int y = rect.top;
+		int width = rect.width();
+		int height = rect.height();
+		int size = width * height * 4;
+
+		int current = index;
+		index ^= 1;
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[current]);
+		if (sizes[current] < size) {
+			glBufferData(GL_PIXEL_PACK_BUFFER, size, null, GL_STREAM_READ);
+			sizes[current] = size;
+		}
+		glReadPixels(x, y, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+		rects[current].set(rect);
+		targets[current] = bitmap;
+		pending[current] = true;
+
+		int previous = current ^ 1;
+		boolean copied = false;
+		if (pending[previous] && targets[previous] == bitmap && rects[previous].equals(rect)) {
+			glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[previous]);
+			Buffer pixels = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, size, GL_MAP_READ_BIT);
+			if (pixels != null) {
+				Utils.copyPixels(pixels, x, y, width, height, bitmap);
+				copied = true;
+			}
+			glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+		}
+		pending[previous] = false;
+		targets[previous] = null;
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+		Render.checkGlError("PixelBufferReader.read");
+		return copied;
+	}
+}
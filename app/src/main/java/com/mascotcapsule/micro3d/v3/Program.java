@@ -25,10 +25,18 @@ import android.util.Log;
 import javax.microedition.util.ContextHolder;
 
 abstract class Program {
+	/** Uniform vectors of the vertex shaders used by everything but the bones */
+	private static final int RESERVED_UNIFORM_VECTORS = 16;
+	private static final int MAX_BONES_LIMIT = 128;
 	static Tex tex;
 	static Color color;
 	static Simple simple;
 	static Sprite sprite;
+	/** Programs skinning the vertices with the bone matrices, null if not supported */
+	static Tex texSkinned;
+	static Color colorSkinned;
+	/** Max number of the bones for the skinning programs */
+	static int maxBones;
 	private static boolean isCreated;
 
 	final int id;
@@ -41,13 +49,26 @@ abstract class Program {
 	int aNormal;
 	int aColorData;
 	int aMaterial;
+	int aBone = -1;
+	int uBones = -1;
 	private int vertexId;
 	private int fragmentId;
+	/** The shaders are compiled and linked, the locations are valid */
+	private boolean linked;
 
 	Program(String vertexShader, String fragmentShader) {
-		id = createProgram(vertexShader, fragmentShader);
-		getLocations();
-		Render.checkGlError("getLocations");
+		this(vertexShader, fragmentShader, "");
+	}
+
+	/**
+	 * @param defines directives added to the beginning of the vertex shader
+	 */
+	Program(String vertexShader, String fragmentShader, String defines) {
+		id = createProgram(vertexShader, fragmentShader, defines);
+		if (linked) {
+			getLocations();
+			Render.checkGlError("getLocations");
+		}
 	}
 
 	static void create() {
@@ -56,13 +77,34 @@ abstract class Program {
 		color = new Color();
 		simple = new Simple();
 		sprite = new Sprite();
+		if (!tex.linked || !color.linked || !simple.linked || !sprite.linked) {
+			throw new RuntimeException("create: the shaders are not linked");
+		}
+		int[] maxVectors = new int[1];
+		glGetIntegerv(GL_MAX_VERTEX_UNIFORM_VECTORS, maxVectors, 0);
+		maxBones = Math.min((maxVectors[0] - RESERVED_UNIFORM_VECTORS) / 3, MAX_BONES_LIMIT);
+		if (maxBones > 0) {
+			String defines = "#define SKINNING\n#define MAX_BONES " + maxBones + "\n";
+			texSkinned = new Tex(defines);
+			colorSkinned = new Color(defines);
+			if (!texSkinned.linked || !colorSkinned.linked) {
+				Log.w(TAG, "create: the skinning shaders are not linked, the CPU skinning is used");
+				texSkinned.delete();
+				colorSkinned.delete();
+				texSkinned = null;
+				colorSkinned = null;
+				maxBones = 0;
+			}
+		}
 		glReleaseShaderCompiler();
+		isCreated = true;
 	}
 
-	private int createProgram(String vertexShader, String fragmentShader) {
-		String vertexShaderCode = ContextHolder.getAssetAsString(vertexShader);
+	private int createProgram(String vertexShader, String fragmentShader, String defines) {
+		String vertexShaderCode = defines + ContextHolder.getAssetAsString(vertexShader);
 		String fragmentShaderCode = ContextHolder.getAssetAsString(fragmentShader);
 
+		linked = true;
 		vertexId = loadShader(GL_VERTEX_SHADER, vertexShaderCode);
 		fragmentId = loadShader(GL_FRAGMENT_SHADER, fragmentShaderCode);
 
@@ -76,6 +118,7 @@ abstract class Program {
 		if (status[0] == 0) {
 			String s = glGetProgramInfoLog(program);
 			Log.e(TAG, "createProgram: " + s);
+			linked = false;
 		}
 		Render.checkGlError("glLinkProgram");
 		return program;
@@ -105,6 +148,7 @@ abstract class Program {
 		if (status[0] == 0) {
 			String s = glGetShaderInfoLog(shader);
 			Log.e(TAG, "loadShader: " + s);
+			linked = false;
 		}
 		Render.checkGlError("glCompileShader");
 		return shader;
@@ -122,6 +166,13 @@ abstract class Program {
 		color.delete();
 		simple.delete();
 		sprite.delete();
+		if (texSkinned != null) {
+			texSkinned.delete();
+			colorSkinned.delete();
+			texSkinned = null;
+			colorSkinned = null;
+		}
+		maxBones = 0;
 		isCreated = false;
 	}
 
@@ -149,6 +200,15 @@ abstract class Program {
 		glUniform3f(uLightDir, x * rlf, y * rlf, z * rlf);
 	}
 
+	/**
+	 * Sets the bone matrices for the skinning programs.
+	 *
+	 * @param matrices 3x4 matrices stored by rows
+	 */
+	void setBones(float[] matrices, int count) {
+		glUniform4fv(uBones, count * 3, matrices, 0);
+	}
+
 	static final class Color extends Program {
 		private static final String VERTEX = "shaders/color.vsh";
 		private static final String FRAGMENT = "shaders/color.fsh";
@@ -164,6 +224,10 @@ abstract class Program {
 			super(VERTEX, FRAGMENT);
 		}
 
+		Color(String defines) {
+			super(VERTEX, FRAGMENT, defines);
+		}
+
 		@Override
 		protected void getLocations() {
 			aPosition = glGetAttribLocation(id, "aPosition");
@@ -182,6 +246,8 @@ abstract class Program {
 			uToonThreshold = glGetUniformLocation(id, "uToonThreshold");
 			uToonHigh = glGetUniformLocation(id, "uToonHigh");
 			uToonLow = glGetUniformLocation(id, "uToonLow");
+			aBone = glGetAttribLocation(id, "aBone");
+			uBones = glGetUniformLocation(id, "uBones");
 		}
 
 		void setColor(int rgb) {
@@ -243,6 +309,10 @@ abstract class Program {
 			super(VERTEX, FRAGMENT);
 		}
 
+		Tex(String defines) {
+			super(VERTEX, FRAGMENT, defines);
+		}
+
 		@Override
 		protected int loadShader(int type, String shaderCode) {
 			if (Boolean.getBoolean("micro3d.v3.texture.filter")) {
@@ -271,6 +341,8 @@ abstract class Program {
 			uToonThreshold = glGetUniformLocation(id, "uToonThreshold");
 			uToonHigh = glGetUniformLocation(id, "uToonHigh");
 			uToonLow = glGetUniformLocation(id, "uToonLow");
+			aBone = glGetAttribLocation(id, "aBone");
+			uBones = glGetUniformLocation(id, "uBones");
 		}
 
 		void enableTexUnit() {
@@ -27,16 +27,24 @@ import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.opengl.GLES20;
 import android.opengl.GLU;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 
 import com.mascotcapsule.micro3d.v3.RenderNode.FigureNode;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -55,19 +63,39 @@ class Render {
 					1.0f, 1.0f, 1.0f, 1.0f
 			});
 	private static final int[] EMPTY_ARRAY = {};
+	// indices of the buffer objects in Model.buffers
+	private static final int BUFFER_BIND_POSE = 0;
+	private static final int BUFFER_BIND_POSE_NORMALS = 1;
+	private static final int BUFFER_TEX_COORDS = 2;
+	private static final int BUFFER_VERTICES = 3;
+	private static final int BUFFER_NORMALS = 4;
 	private static Render instance;
 	private EGLDisplay eglDisplay;
 	private EGLSurface eglWindowSurface;
 	private EGLConfig eglConfig;
 	private EGLContext eglContext;
 	private final int[] bgTextureId = new int[]{-1};
+	private int bgTextureWidth;
+	private int bgTextureHeight;
+	/** Thread that owns the EGL context, all the GL calls are made on it */
+	private final Handler glHandler;
 	private final float[] MVP_TMP = new float[16];
+	private final float[] SPRITE_VERTEX_TMP = new float[8];
+	private final float[] SPRITE_QUAD_TMP = new float[4 * 6];
+	// slots of the direct buffers reused by the primitives
+	private static final int ARENA_VERTICES = 0;
+	private static final int ARENA_NORMALS = 1;
+	private static final int ARENA_ATTRIBUTES = 2;
+	private final ByteBuffer[] arenaBytes = new ByteBuffer[3];
+	private final FloatBuffer[] arenaFloats = new FloatBuffer[3];
 
 	private Graphics graphics;
 	private Bitmap mBitmapBuffer;
 	private int width, height;
 	private final Rect gClip = new Rect();
 	private final Rect clip = new Rect();
+	/** Region of the bitmap uploaded to the background texture */
+	private final Rect dirty = new Rect();
 	private final boolean skipSprites = Boolean.getBoolean("micro3d.v3.skipSprites");
 	private boolean backCopied;
 	private final LinkedList<RenderNode> stack = new LinkedList<>();
@@ -75,6 +103,13 @@ class Render {
 	private Texture[] textures;
 	private final boolean postCopy2D = !Boolean.getBoolean("micro3d.v3.render.no-mix2D3D");
 	private final boolean preCopy2D = !Boolean.getBoolean("micro3d.v3.render.background.ignore");
+	private final boolean cpuSkinning = Boolean.getBoolean("micro3d.v3.render.cpu-skinning");
+	/** Read the frames back through pixel buffers, with one frame of latency */
+	private final boolean asyncReadback = Boolean.getBoolean("micro3d.v3.render.async-readback");
+	private PixelBufferReader pixelBufferReader;
+	private final ReferenceQueue<Model> releasedModels = new ReferenceQueue<>();
+	private final HashSet<BufferRef> bufferRefs = new HashSet<>();
+	private float[] boneMatrices = new float[0];
 	private int textureIdx;
 
 	/**
@@ -93,6 +128,12 @@ class Render {
 		}
 	}
 
+	private Render() {
+		HandlerThread thread = new HandlerThread("micro3d-GL");
+		thread.start();
+		glHandler = new Handler(thread.getLooper());
+	}
+
 	synchronized static Render getRender() {
 		if (instance == null) {
 			instance = new Render();
@@ -121,10 +162,31 @@ class Render {
 				EGL10.EGL_NONE
 		};
 		EGLConfig[] eglConfigs = new EGLConfig[1];
+		int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+		if (asyncReadback && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			// pixel pack buffers need a GLES 3 context
+			int EGL_OPENGL_ES3_BIT = 0x0040;
+			attribs[1] = EGL_OPENGL_ES3_BIT;
+			if (egl.eglChooseConfig(eglDisplay, attribs, eglConfigs, 1, num_config) && num_config[0] > 0) {
+				int[] attrib_list = {
+						EGL_CONTEXT_CLIENT_VERSION, 3,
+						EGL10.EGL_NONE
+				};
+				EGLContext context = egl.eglCreateContext(eglDisplay, eglConfigs[0],
+						EGL10.EGL_NO_CONTEXT, attrib_list);
+				if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+					this.eglConfig = eglConfigs[0];
+					this.eglContext = context;
+					pixelBufferReader = new PixelBufferReader();
+					return;
+				}
+			}
+			Log.w(TAG, "init: GLES 3 is not supported, async readback is disabled");
+			attribs[1] = EGL_OPENGL_ES2_BIT;
+		}
 		egl.eglChooseConfig(eglDisplay, attribs, eglConfigs, 1, num_config);
 		this.eglConfig = eglConfigs[0];
 
-		int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
 		int[] attrib_list = {
 				EGL_CONTEXT_CLIENT_VERSION, 2,
 				EGL10.EGL_NONE
@@ -137,31 +199,7 @@ class Render {
 		Canvas canvas = graphics.getCanvas();
 		int width = canvas.getWidth();
 		int height = canvas.getHeight();
-		if (eglContext == null) init();
 		mBitmapBuffer = graphics.getBitmap();
-		EGL10 egl = (EGL10) EGLContext.getEGL();
-		if (this.width != width || this.height != height) {
-
-			if (this.eglWindowSurface != null) {
-				releaseEglContext();
-				egl.eglDestroySurface(this.eglDisplay, this.eglWindowSurface);
-			}
-
-			int[] surface_attribs = {
-					EGL10.EGL_WIDTH, width,
-					EGL10.EGL_HEIGHT, height,
-					EGL10.EGL_NONE};
-			this.eglWindowSurface = egl.eglCreatePbufferSurface(eglDisplay, eglConfig, surface_attribs);
-			egl.eglMakeCurrent(eglDisplay, eglWindowSurface, eglWindowSurface, eglContext);
-
-			glViewport(0, 0, width, height);
-			Program.create();
-			this.width = width;
-			this.height = height;
-			glClearColor(0, 0, 0, 1);
-			glClear(GL_COLOR_BUFFER_BIT);
-		}
-		egl.eglMakeCurrent(eglDisplay, eglWindowSurface, eglWindowSurface, eglContext);
 		Rect clip = this.clip;
 		canvas.getClipBounds(clip);
 		int l = clip.left;
@@ -169,15 +207,101 @@ class Render {
 		int r = clip.right;
 		int b = clip.bottom;
 		gClip.set(l, t, r, b);
+		backCopied = false;
+		if (eglContext == null || this.width != width || this.height != height) {
+			// wait for the programs, the skinning support is decided by them
+			runOnGlThread(() -> {
+				if (eglContext == null) init();
+				createSurface(width, height);
+				setClip(l, t, r, b);
+				glClear(GL_DEPTH_BUFFER_BIT);
+			});
+		} else {
+			postToGlThread(() -> {
+				setClip(l, t, r, b);
+				glClear(GL_DEPTH_BUFFER_BIT);
+			});
+		}
+	}
+
+	private void createSurface(int width, int height) {
+		EGL10 egl = (EGL10) EGLContext.getEGL();
+		if (this.eglWindowSurface != null) {
+			egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+			egl.eglDestroySurface(this.eglDisplay, this.eglWindowSurface);
+		}
+
+		int[] surface_attribs = {
+				EGL10.EGL_WIDTH, width,
+				EGL10.EGL_HEIGHT, height,
+				EGL10.EGL_NONE};
+		this.eglWindowSurface = egl.eglCreatePbufferSurface(eglDisplay, eglConfig, surface_attribs);
+		egl.eglMakeCurrent(eglDisplay, eglWindowSurface, eglWindowSurface, eglContext);
+
+		glViewport(0, 0, width, height);
+		Program.create();
+		this.width = width;
+		this.height = height;
+		glClearColor(0, 0, 0, 1);
+		glClear(GL_COLOR_BUFFER_BIT);
+	}
+
+	private void setClip(int l, int t, int r, int b) {
 		if (l == 0 && t == 0 && r == this.width && b == this.height) {
 			glDisable(GL_SCISSOR_TEST);
 		} else {
 			glEnable(GL_SCISSOR_TEST);
 			glScissor(l, t, r - l, b - t);
 		}
-		glClear(GL_DEPTH_BUFFER_BIT);
-		backCopied = false;
-		egl.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+	}
+
+	/**
+	 * Runs the task on the GL thread and waits for its completion.
+	 * The wait is not interruptible, as the task may use the buffer of the bound Graphics.
+	 */
+	private void runOnGlThread(Runnable task) {
+		if (Looper.myLooper() == glHandler.getLooper()) {
+			task.run();
+			return;
+		}
+		FutureTask<Void> future = new FutureTask<>(task, null);
+		glHandler.post(future);
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Runs the task on the GL thread without waiting.
+	 */
+	private void postToGlThread(Runnable task) {
+		glHandler.post(() -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				Log.e(TAG, "GL task failed", e);
+			}
+		});
 	}
 
 	private static void applyBlending(int blendMode) {
@@ -205,6 +329,7 @@ class Render {
 
 	private void copy2d(boolean preProcess) {
 		if (!glIsTexture(bgTextureId[0])) {
+			bgTextureWidth = bgTextureHeight = 0;
 			glGenTextures(1, bgTextureId, 0);
 			glActiveTexture(GL_TEXTURE1);
 			glBindTexture(GL_TEXTURE_2D, bgTextureId[0]);
@@ -217,8 +342,25 @@ class Render {
 			glActiveTexture(GL_TEXTURE1);
 			glBindTexture(GL_TEXTURE_2D, bgTextureId[0]);
 		}
-		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmapBuffer, 0);
-		checkGlError("texImage2D");
+		int bw = mBitmapBuffer.getWidth();
+		int bh = mBitmapBuffer.getHeight();
+		if (bgTextureWidth != bw || bgTextureHeight != bh) {
+			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, bw, bh, 0, GL_RGBA, GL_UNSIGNED_BYTE, null);
+			bgTextureWidth = bw;
+			bgTextureHeight = bh;
+		}
+		// only the bound clip is rendered and read back, and the 2D drawing since the reset
+		// of the Graphics is limited to its clip bounds, the border is for the filtering
+		Rect dirty = this.dirty;
+		dirty.set(gClip);
+		if (dirty.intersect(graphics.getClipBounds())) {
+			int l = Math.max(dirty.left - 1, 0);
+			int t = Math.max(dirty.top - 1, 0);
+			int r = Math.min(dirty.right + 1, bw);
+			int b = Math.min(dirty.bottom + 1, bh);
+			Utils.glTexSubImage2D(l, t, r - l, b - t, mBitmapBuffer);
+		}
+		checkGlError("texSubImage2D");
 
 		final Program.Simple program = Program.simple;
 		program.use();
@@ -269,6 +411,7 @@ class Render {
 				egl.eglDestroySurface(eglDisplay, eglWindowSurface);
 			egl.eglDestroyContext(eglDisplay, eglContext);
 			egl.eglTerminate(eglDisplay);
+			glHandler.getLooper().quit();
 		} finally {
 			super.finalize();
 		}
@@ -281,45 +424,116 @@ class Render {
 		if (!model.hasPolyT && !model.hasPolyC)
 			return;
 
+		int[] buffers = getBuffers(model);
+		try {
+			vertices.rewind();
+			glBindBuffer(GL_ARRAY_BUFFER, buffers[BUFFER_VERTICES]);
+			glBufferData(GL_ARRAY_BUFFER, vertices.capacity() * 4, vertices, GL_STREAM_DRAW);
+			if (normals != null) {
+				normals.rewind();
+				glBindBuffer(GL_ARRAY_BUFFER, buffers[BUFFER_NORMALS]);
+				glBufferData(GL_ARRAY_BUFFER, normals.capacity() * 4, normals, GL_STREAM_DRAW);
+			}
+			renderFigure(model, x, y, layout, textures, effect, Program.tex, Program.color,
+					buffers[BUFFER_VERTICES], normals == null ? 0 : buffers[BUFFER_NORMALS], null);
+		} finally {
+			glBindBuffer(GL_ARRAY_BUFFER, 0);
+		}
+	}
+
+	/**
+	 * Renders the model skinned on the GPU.
+	 *
+	 * @param boneMatrices bone matrices of the posture
+	 * @param pattern      pattern of the visible polygons, -1 for all the polygons
+	 */
+	void renderFigure(Model model, int x, int y, FigureLayout layout, Texture[] textures,
+					  Effect3D effect, float[] boneMatrices, int pattern) {
+		if (!effect.isTransparency && flushStep == 2) return;
+
+		if (!model.hasPolyT && !model.hasPolyC)
+			return;
+
+		boolean created = model.buffers[0] == 0;
+		int[] buffers = getBuffers(model);
+		if (model.fillBindPose(pattern) || created) {
+			FloatBuffer vertices = model.bindPoseArray;
+			glBindBuffer(GL_ARRAY_BUFFER, buffers[BUFFER_BIND_POSE]);
+			glBufferData(GL_ARRAY_BUFFER, vertices.capacity() * 4, vertices, GL_STATIC_DRAW);
+			FloatBuffer normals = model.bindPoseNormalsArray;
+			if (normals != null) {
+				glBindBuffer(GL_ARRAY_BUFFER, buffers[BUFFER_BIND_POSE_NORMALS]);
+				glBufferData(GL_ARRAY_BUFFER, normals.capacity() * 4, normals, GL_STATIC_DRAW);
+			}
+			checkGlError("bindPose");
+		}
+		try {
+			renderFigure(model, x, y, layout, textures, effect, Program.texSkinned, Program.colorSkinned,
+					buffers[BUFFER_BIND_POSE],
+					model.bindPoseNormalsArray == null ? 0 : buffers[BUFFER_BIND_POSE_NORMALS],
+					boneMatrices);
+		} finally {
+			glBindBuffer(GL_ARRAY_BUFFER, 0);
+		}
+	}
+
+	/**
+	 * Returns the buffer objects of the model, creating them on the first use.
+	 * The texture coordinates don't change, so they are uploaded only once.
+	 */
+	private int[] getBuffers(Model model) {
+		int[] buffers = model.buffers;
+		if (buffers[0] == 0) {
+			glGenBuffers(buffers.length, buffers, 0);
+			bufferRefs.add(new BufferRef(model, releasedModels));
+			ByteBuffer tcBuf = model.texCoordArray;
+			tcBuf.rewind();
+			glBindBuffer(GL_ARRAY_BUFFER, buffers[BUFFER_TEX_COORDS]);
+			glBufferData(GL_ARRAY_BUFFER, tcBuf.capacity(), tcBuf, GL_STATIC_DRAW);
+			checkGlError("getBuffers");
+		}
+		return buffers;
+	}
+
+	/**
+	 * @param vertexBuffer buffer with the vertices, followed by the bone index if the bones are set
+	 * @param normalBuffer buffer with the normals, 0 if the model has no normals
+	 * @param boneMatrices bone matrices for the skinning programs, null for the skinned vertices
+	 */
+	private void renderFigure(Model model, int x, int y, FigureLayout layout, Texture[] textures,
+							  Effect3D effect, Program.Tex texProgram, Program.Color colorProgram,
+							  int vertexBuffer, int normalBuffer, float[] boneMatrices) {
 		glEnable(GL_DEPTH_TEST);
 		glDepthMask(flushStep == 1);
 		float[] mvm = getMvMatrix(layout);
 		float[] pm = getProjectionMatrix(layout, x, y);
 		float[] mvp = MVP_TMP;
 		Matrix.multiplyMM(mvp, 0, pm, 0, mvm, 0);
-		int[] bufHandles = new int[3];
-		glGenBuffers(3, bufHandles, 0);
-		vertices.rewind();
+		int vertexStride = boneMatrices == null ? 3 * 4 : 4 * 4;
+		int texCoordBuffer = model.buffers[BUFFER_TEX_COORDS];
 		try {
-			glBindBuffer(GL_ARRAY_BUFFER, bufHandles[0]);
-			glBufferData(GL_ARRAY_BUFFER, vertices.capacity() * 4, vertices, GL_STREAM_DRAW);
-			ByteBuffer tcBuf = model.texCoordArray;
-			tcBuf.rewind();
-			glBindBuffer(GL_ARRAY_BUFFER, bufHandles[1]);
-			glBufferData(GL_ARRAY_BUFFER, tcBuf.capacity(), tcBuf, GL_STREAM_DRAW);
-
-			if (normals != null) {
-				normals.rewind();
-				glBindBuffer(GL_ARRAY_BUFFER, bufHandles[2]);
-				glBufferData(GL_ARRAY_BUFFER, normals.capacity() * 4, normals, GL_STREAM_DRAW);
-			}
 			if (model.hasPolyT) {
-				final Program.Tex program = Program.tex;
+				final Program.Tex program = texProgram;
 				program.use();
 				program.setToonShading(effect);
 
-				glBindBuffer(GL_ARRAY_BUFFER, bufHandles[0]);
+				glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
 				glEnableVertexAttribArray(program.aPosition);
-				glVertexAttribPointer(program.aPosition, 3, GL_FLOAT, false, 3 * 4, 0);
+				glVertexAttribPointer(program.aPosition, 3, GL_FLOAT, false, vertexStride, 0);
+				if (boneMatrices != null) {
+					glEnableVertexAttribArray(program.aBone);
+					glVertexAttribPointer(program.aBone, 1, GL_FLOAT, false, vertexStride, 3 * 4);
+					program.setBones(boneMatrices, model.numBones);
+				}
 
-				glBindBuffer(GL_ARRAY_BUFFER, bufHandles[1]);
+				glBindBuffer(GL_ARRAY_BUFFER, texCoordBuffer);
 				glEnableVertexAttribArray(program.aColorData);
 				glVertexAttribPointer(program.aColorData, 2, GL_UNSIGNED_BYTE, false, 5, 0);
 				glEnableVertexAttribArray(program.aMaterial);
 				glVertexAttribPointer(program.aMaterial, 3, GL_UNSIGNED_BYTE, false, 5, 2);
 
-				if (normals != null) {
-					glBindBuffer(GL_ARRAY_BUFFER, bufHandles[2]);
+				if (normalBuffer != 0) {
+					glBindBuffer(GL_ARRAY_BUFFER, normalBuffer);
 					glEnableVertexAttribArray(program.aNormal);
 					glVertexAttribPointer(program.aNormal, 3, GL_FLOAT, false, 3 * 4, 0);
 				} else {
@@ -338,31 +552,39 @@ class Render {
 					glUniform2f(program.uSphereSize, -1, -1);
 				}
 				// Draw triangles
-				renderModel(model, textures, effect);
+				renderModel(program, model, textures, effect);
 				glDisableVertexAttribArray(program.aPosition);
 				glDisableVertexAttribArray(program.aColorData);
 				glDisableVertexAttribArray(program.aMaterial);
 				glDisableVertexAttribArray(program.aNormal);
+				if (boneMatrices != null) {
+					glDisableVertexAttribArray(program.aBone);
+				}
 				glBindBuffer(GL_ARRAY_BUFFER, 0);
 			}
 
 			if (model.hasPolyC) {
-				final Program.Color program = Program.color;
+				final Program.Color program = colorProgram;
 				program.use();
 				glUniform1i(program.uIsPrimitive, GL_FALSE);
 
-				glBindBuffer(GL_ARRAY_BUFFER, bufHandles[0]);
+				glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
 				glEnableVertexAttribArray(program.aPosition);
-				glVertexAttribPointer(program.aPosition, 3, GL_FLOAT, false, 3 * 4, 0);
+				glVertexAttribPointer(program.aPosition, 3, GL_FLOAT, false, vertexStride, 0);
+				if (boneMatrices != null) {
+					glEnableVertexAttribArray(program.aBone);
+					glVertexAttribPointer(program.aBone, 1, GL_FLOAT, false, vertexStride, 3 * 4);
+					program.setBones(boneMatrices, model.numBones);
+				}
 
-				glBindBuffer(GL_ARRAY_BUFFER, bufHandles[1]);
+				glBindBuffer(GL_ARRAY_BUFFER, texCoordBuffer);
 				glVertexAttribPointer(program.aColorData, 3, GL_UNSIGNED_BYTE, false, 5, 0);
 				glEnableVertexAttribArray(program.aColorData);
 				glEnableVertexAttribArray(program.aMaterial);
 				glVertexAttribPointer(program.aMaterial, 2, GL_UNSIGNED_BYTE, false, 5, 3);
 
-				if (normals != null) {
-					glBindBuffer(GL_ARRAY_BUFFER, bufHandles[2]);
+				if (normalBuffer != 0) {
+					glBindBuffer(GL_ARRAY_BUFFER, normalBuffer);
 					glVertexAttribPointer(program.aNormal, 3, GL_FLOAT, false, 3 * 4, 0);
 					glEnableVertexAttribArray(program.aNormal);
 				} else {
@@ -385,10 +607,31 @@ class Render {
 				glDisableVertexAttribArray(program.aColorData);
 				glDisableVertexAttribArray(program.aMaterial);
 				glDisableVertexAttribArray(program.aNormal);
+				if (boneMatrices != null) {
+					glDisableVertexAttribArray(program.aBone);
+				}
 			}
 		} finally {
 			glBindBuffer(GL_ARRAY_BUFFER, 0);
-			glDeleteBuffers(3, bufHandles, 0);
+		}
+	}
+
+	/**
+	 * @return true if the model can be skinned on the GPU
+	 */
+	boolean isGpuSkinning(Model model) {
+		return !cpuSkinning && model.numBones > 0 && model.numBones <= Program.maxBones;
+	}
+
+	/**
+	 * Deletes the buffer objects of the models that are not used anymore.
+	 * Must be called with the context bound.
+	 */
+	private void deleteReleasedBuffers() {
+		BufferRef ref;
+		while ((ref = (BufferRef) releasedModels.poll()) != null) {
+			bufferRefs.remove(ref);
+			glDeleteBuffers(ref.buffers.length, ref.buffers, 0);
 		}
 	}
 
@@ -421,129 +664,98 @@ class Render {
 		return m;
 	}
 
-	private void renderModel(Model model, Texture[] textures, Effect3D effect) {
+	private void renderModel(Program.Tex program, Model model, Texture[] textures, Effect3D effect) {
 		if (textures == null || textures.length == 0) return;
-		Program.Tex program = Program.tex;
 		program.enableTexUnit();
-		int[][][] meshes = model.subMeshesLengthsT;
-		int length = meshes.length;
-		int blendMode = 0;
-		int pos = 0;
-		if (flushStep == 1) {
-			if (effect.isTransparency) length = 1;
-			glDisable(GL_BLEND);
-		} else {
-			int[][] mesh = meshes[blendMode++];
-			int cnt = 0;
-			for (int[] lens : mesh) {
-				for (int len : lens) {
-					cnt += len;
-				}
-			}
-			pos += cnt;
-		}
-		while (blendMode < length) {
-			int[][] texMesh = meshes[blendMode];
-			if (flushStep == 2) {
-				applyBlending(blendMode << 1);
-			}
-			for (int face = 0; face < texMesh.length; face++) {
-				int[] lens = texMesh[face];
-				Texture tex = face >= textures.length ? null : textures[face];
-				program.setTex(tex);
-				int cnt = lens[0];
-				if (cnt > 0) {
-					glEnable(GL_CULL_FACE);
-					glDrawArrays(GL_TRIANGLES, pos, cnt);
-					pos += cnt;
-				}
-				cnt = lens[1];
-				if (cnt > 0) {
-					glDisable(GL_CULL_FACE);
-					glDrawArrays(GL_TRIANGLES, pos, cnt);
-					pos += cnt;
-				}
-			}
-			blendMode++;
-		}
-		checkGlError("glDrawArrays");
+		renderRanges(model.getRangesT(), program, textures, effect.isTransparency);
 	}
 
 	private void renderModel(Model model, boolean enableBlending) {
-		int[][] meshes = model.subMeshesLengthsC;
-		int length = meshes.length;
-		int pos = model.numVerticesPolyT;
-		int blendMode = 0;
+		renderRanges(model.getRangesC(), null, null, enableBlending);
+	}
+
+	/**
+	 * Draws the ranges of the model polygons for the current flush step.
+	 *
+	 * @param ranges   ranges from {@link Model#getRangesT()} or {@link Model#getRangesC()}
+	 * @param program  program to bind the textures, null for the colored polygons
+	 * @param blending true if the polygons with a blend mode are drawn in the second step
+	 */
+	private void renderRanges(int[] ranges, Program.Tex program, Texture[] textures, boolean blending) {
 		if (flushStep == 1) {
-			if (enableBlending) length = 1;
 			glDisable(GL_BLEND);
-		} else {
-			int[] mesh = meshes[blendMode++];
-			int cnt = 0;
-			for (int len : mesh) {
-				cnt += len;
-			}
-			pos += cnt;
 		}
-		while (blendMode < length) {
-			int[] mesh = meshes[blendMode];
-			if (flushStep == 2) {
-				applyBlending(blendMode << 1);
+		int blendMode = -1;
+		int face = -1;
+		for (int i = 0; i < ranges.length; i += 5) {
+			int mode = ranges[i];
+			if (flushStep == 1) {
+				if (blending && mode != 0) break;
+			} else if (mode == 0) {
+				continue;
+			} else if (mode != blendMode) {
+				applyBlending(mode << 1);
+				blendMode = mode;
 			}
-			int cnt = mesh[0];
-			if (cnt > 0) {
-				glEnable(GL_CULL_FACE);
-				glDrawArrays(GL_TRIANGLES, pos, cnt);
-				pos += cnt;
+			if (program != null && ranges[i + 1] != face) {
+				face = ranges[i + 1];
+				program.setTex(face >= textures.length ? null : textures[face]);
 			}
-			cnt = mesh[1];
-			if (cnt > 0) {
+			if (ranges[i + 2] == 0) {
+				glEnable(GL_CULL_FACE);
+			} else {
 				glDisable(GL_CULL_FACE);
-				glDrawArrays(GL_TRIANGLES, pos, cnt);
-				pos += cnt;
 			}
-			blendMode++;
+			glDrawArrays(GL_TRIANGLES, ranges[i + 3], ranges[i + 4]);
 		}
 		checkGlError("glDrawArrays");
 	}
 
 	synchronized void release() {
-		bindEglContext();
 		stack.clear();
-		if (postCopy2D) {
-			copy2d(false);
-		}
-		Rect clip = this.gClip;
-		Utils.glReadPixels(clip.left, clip.top, clip.width(), clip.height(), mBitmapBuffer);
-		releaseEglContext();
+		runOnGlThread(() -> {
+			if (postCopy2D) {
+				copy2d(false);
+			}
+			Rect clip = this.gClip;
+			if (clip.isEmpty()) {
+				return;
+			}
+			if (pixelBufferReader == null || !pixelBufferReader.read(clip, mBitmapBuffer)) {
+				Utils.glReadPixels(clip.left, clip.top, clip.width(), clip.height(), mBitmapBuffer);
+			}
+		});
 	}
 
 	synchronized void flush() {
 		if (stack.isEmpty()) {
 			return;
 		}
-		bindEglContext();
 		try {
-			if (!backCopied && preCopy2D) copy2d(true);
-			flushStep = 1;
-			for (RenderNode r : stack) {
-				r.run();
-			}
-			flushStep = 2;
-			for (RenderNode r : stack) {
-				r.run();
-				r.recycle();
-			}
-			glDisable(GL_BLEND);
-			glDepthMask(true);
-			glClear(GL_DEPTH_BUFFER_BIT);
-			glFlush();
+			runOnGlThread(this::renderStack);
 		} finally {
 			stack.clear();
-			releaseEglContext();
 		}
 	}
 
+	private void renderStack() {
+		deleteReleasedBuffers();
+		if (!backCopied && preCopy2D) copy2d(true);
+		flushStep = 1;
+		for (RenderNode r : stack) {
+			r.run();
+		}
+		flushStep = 2;
+		for (RenderNode r : stack) {
+			r.run();
+			r.recycle();
+		}
+		glDisable(GL_BLEND);
+		glDepthMask(true);
+		glClear(GL_DEPTH_BUFFER_BIT);
+		glFlush();
+	}
+
 	private void renderPrimitives(Texture texture, int command, int numPrimitives,
 								  int[] vertices, int[] normals, int[] texCoords,
 								  int[] colors, Effect3D effect,
@@ -565,8 +777,7 @@ class Render {
 		switch ((command & 0x7000000)) {
 			case PRIMITVE_POINTS: {
 				int vcLen = numPrimitives * 3;
-				FloatBuffer vcBuf = ByteBuffer.allocateDirect(numPrimitives * 3 * 4)
-						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				FloatBuffer vcBuf = getArenaFloats(ARENA_VERTICES, numPrimitives * 3);
 				for (int i = 0; i < vcLen; i++) {
 					vcBuf.put(vertices[i]);
 				}
@@ -580,8 +791,7 @@ class Render {
 				if ((command & PDATA_COLOR_PER_COMMAND) != 0) {
 					program.setColor(colors[0]);
 				} else {
-					ByteBuffer colorBuf = ByteBuffer.allocateDirect(numPrimitives * 3 * 4)
-							.order(ByteOrder.nativeOrder());
+					ByteBuffer colorBuf = getArenaBytes(ARENA_ATTRIBUTES, numPrimitives * 3 * 4);
 					for (int i = 0; i < numPrimitives; i++) {
 						int color = colors[i];
 						colorBuf.put((byte) (color >> 16 & 0xFF));
@@ -606,8 +816,7 @@ class Render {
 			}
 			case PRIMITVE_LINES: {
 				int vcLen = numPrimitives * 3 * 2;
-				FloatBuffer vcBuf = ByteBuffer.allocateDirect(numPrimitives * 2 * 3 * 4)
-						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				FloatBuffer vcBuf = getArenaFloats(ARENA_VERTICES, numPrimitives * 2 * 3);
 				for (int i = 0; i < vcLen; i++) {
 					vcBuf.put(vertices[i]);
 				}
@@ -621,8 +830,7 @@ class Render {
 				if ((command & PDATA_COLOR_PER_COMMAND) != 0) {
 					program.setColor(colors[0]);
 				} else {
-					ByteBuffer colorBuf = ByteBuffer.allocateDirect(numPrimitives * 2 * 3 * 4)
-							.order(ByteOrder.nativeOrder());
+					ByteBuffer colorBuf = getArenaBytes(ARENA_ATTRIBUTES, numPrimitives * 2 * 3 * 4);
 					for (int i = 0; i < numPrimitives; i++) {
 						int color = colors[i];
 						byte r = (byte) (color >> 16 & 0xFF);
@@ -650,8 +858,7 @@ class Render {
 			case PRIMITVE_TRIANGLES: {
 				glDisable(GL_CULL_FACE);
 				int vcLen = numPrimitives * 3 * 3;
-				FloatBuffer vcBuf = ByteBuffer.allocateDirect(vcLen * 4)
-						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				FloatBuffer vcBuf = getArenaFloats(ARENA_VERTICES, vcLen);
 				for (int i = 0; i < vcLen; i++) {
 					vcBuf.put(vertices[i]);
 				}
@@ -659,8 +866,7 @@ class Render {
 				FloatBuffer ncBuf;
 				switch (command & PDATA_NORMAL_PER_VERTEX) {
 					case PDATA_NORMAL_PER_FACE:
-						ncBuf = ByteBuffer.allocateDirect(vcLen * 4)
-								.order(ByteOrder.nativeOrder()).asFloatBuffer();
+						ncBuf = getArenaFloats(ARENA_NORMALS, vcLen);
 						for (int i = 0, normLen = numPrimitives * 3; i < normLen; ) {
 							float x = normals[i++];
 							float y = normals[i++];
@@ -671,8 +877,7 @@ class Render {
 						}
 						break;
 					case PDATA_NORMAL_PER_VERTEX:
-						ncBuf = ByteBuffer.allocateDirect(vcLen * 4)
-								.order(ByteOrder.nativeOrder()).asFloatBuffer();
+						ncBuf = getArenaFloats(ARENA_NORMALS, vcLen);
 						for (int i = 0; i < vcLen; i++) {
 							ncBuf.put(normals[i]);
 						}
@@ -686,8 +891,7 @@ class Render {
 					renderMesh(mvp, mvm, command, blendEnabled, effect, vcBuf, ncBuf, colors[0]);
 				} else if ((command & PDATA_TEXURE_COORD) != 0) {
 					int tcLen = numPrimitives * 3 * 2;
-					ByteBuffer tcBuf = ByteBuffer.allocateDirect(tcLen)
-							.order(ByteOrder.nativeOrder());
+					ByteBuffer tcBuf = getArenaBytes(ARENA_ATTRIBUTES, tcLen);
 					for (int i = 0; i < tcLen; i++) {
 						tcBuf.put((byte) texCoords[i]);
 					}
@@ -696,7 +900,7 @@ class Render {
 					Matrix.multiplyMM(mvp, 0, pm, 0, mvm, 0);
 					renderMesh(texture, mvp, mvm, command, blendEnabled, effect, vcBuf, ncBuf, tcBuf);
 				} else if ((command & PDATA_COLOR_PER_FACE) != 0) {
-					ByteBuffer colorBuf = ByteBuffer.allocateDirect(vcLen).order(ByteOrder.nativeOrder());
+					ByteBuffer colorBuf = getArenaBytes(ARENA_ATTRIBUTES, vcLen);
 					for (int i = 0; i < numPrimitives; i++) {
 						int color = colors[i];
 						byte r = (byte) (color >> 16 & 0xFF);
@@ -714,8 +918,7 @@ class Render {
 				break;
 			}
 			case PRIMITVE_QUADS: {
-				FloatBuffer vcBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 3 * 4)
-						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				FloatBuffer vcBuf = getArenaFloats(ARENA_VERTICES, numPrimitives * 6 * 3);
 				for (int i = 0; i < numPrimitives; i++) {
 					int offset = i * 4 * 3;
 					int pos = offset;
@@ -732,8 +935,7 @@ class Render {
 				FloatBuffer ncBuf;
 				switch (command & PDATA_NORMAL_PER_VERTEX) {
 					case PDATA_NORMAL_PER_FACE:
-						ncBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 3 * 4)
-								.order(ByteOrder.nativeOrder()).asFloatBuffer();
+						ncBuf = getArenaFloats(ARENA_NORMALS, numPrimitives * 6 * 3);
 						for (int i = 0, ncLen = numPrimitives * 3; i < ncLen; ) {
 							float x = normals[i++];
 							float y = normals[i++];
@@ -747,8 +949,7 @@ class Render {
 						}
 						break;
 					case PDATA_NORMAL_PER_VERTEX:
-						ncBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 3 * 4)
-								.order(ByteOrder.nativeOrder()).asFloatBuffer();
+						ncBuf = getArenaFloats(ARENA_NORMALS, numPrimitives * 6 * 3);
 						for (int i = 0; i < numPrimitives; i++) {
 							int offset = i * 4 * 3;
 							int pos = offset;
@@ -769,8 +970,7 @@ class Render {
 					Matrix.multiplyMM(MVP_TMP, 0, pm, 0, mvm, 0);
 					renderMesh(MVP_TMP, mvm, command, blendEnabled, effect, vcBuf, ncBuf, colors[0]);
 				} else if ((command & PDATA_TEXURE_COORD) != 0) {
-					ByteBuffer tcBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 2)
-							.order(ByteOrder.nativeOrder());
+					ByteBuffer tcBuf = getArenaBytes(ARENA_ATTRIBUTES, numPrimitives * 6 * 2);
 					for (int i = 0; i < numPrimitives; i++) {
 						int offset = i * 4 * 2;
 						int pos = offset;
@@ -788,8 +988,7 @@ class Render {
 					Matrix.multiplyMM(mvp, 0, pm, 0, mvm, 0);
 					renderMesh(texture, mvp, mvm, command, blendEnabled, effect, vcBuf, ncBuf, tcBuf);
 				} else if ((command & PDATA_COLOR_PER_FACE) != 0) {
-					ByteBuffer colorBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 3 * 4)
-							.order(ByteOrder.nativeOrder());
+					ByteBuffer colorBuf = getArenaBytes(ARENA_ATTRIBUTES, numPrimitives * 6 * 3 * 4);
 					for (int i = 0; i < numPrimitives; i++) {
 						int color = colors[i];
 						byte r = (byte) (color >> 16 & 0xFF);
@@ -815,6 +1014,37 @@ class Render {
 		}
 	}
 
+	/**
+	 * Returns a direct buffer of the arena slot with the given limit. The buffers only grow,
+	 * so no memory is allocated once the largest primitives have been rendered.
+	 */
+	private ByteBuffer getArenaBytes(int slot, int size) {
+		ByteBuffer buffer = arenaBytes[slot];
+		if (buffer == null || buffer.capacity() < size) {
+			int capacity = buffer == null ? 4096 : buffer.capacity();
+			while (capacity < size) {
+				capacity <<= 1;
+			}
+			buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+			arenaBytes[slot] = buffer;
+			arenaFloats[slot] = buffer.asFloatBuffer();
+		}
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Returns a float view of the arena slot with the given limit.
+	 */
+	private FloatBuffer getArenaFloats(int slot, int size) {
+		getArenaBytes(slot, size * 4);
+		FloatBuffer buffer = arenaFloats[slot];
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
 	private void renderSprites(Texture texture, int command, int numPrimitives, int[] vertices, int[] texCoords, FigureLayout layout, float[] pm, float[] mvm, int blend, boolean blendEnabled) {
 		if (skipSprites) return;
 
@@ -833,13 +1063,13 @@ class Render {
 		Program.Sprite program = Program.sprite;
 		program.use();
 
-		float[] m = new float[16];
+		float[] m = MVP_TMP;
 		Matrix.multiplyMM(m, 0, pm, 0, mvm, 0);
-		float[] vert = new float[8];
-		float[] quad = new float[4 * 6];
+		float[] vert = SPRITE_VERTEX_TMP;
+		float[] quad = SPRITE_QUAD_TMP;
 
-		FloatBuffer vcBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 4 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-		ByteBuffer tcBuf = ByteBuffer.allocateDirect(numPrimitives * 6 * 2).order(ByteOrder.nativeOrder());
+		FloatBuffer vcBuf = getArenaFloats(ARENA_VERTICES, numPrimitives * 6 * 4);
+		ByteBuffer tcBuf = getArenaBytes(ARENA_ATTRIBUTES, numPrimitives * 6 * 2);
 		int pos = 0;
 		int texOffset = 0;
 		for (int i = 0; i < numPrimitives; i++) {
@@ -964,7 +1194,7 @@ class Render {
 		glDisable(GL_CULL_FACE);
 		int blendMode = command & PATTR_BLEND_SUB;
 		applyBlending(blendEnabled ? blendMode >> 4 : 0);
-		glDrawArrays(GL_TRIANGLES, 0, vertices.capacity() / 3);
+		glDrawArrays(GL_TRIANGLES, 0, vertices.limit() / 3);
 		glDisableVertexAttribArray(program.aPosition);
 		glDisableVertexAttribArray(program.aNormal);
 		checkGlError("glDrawArrays");
@@ -1011,7 +1241,7 @@ class Render {
 		glDisable(GL_CULL_FACE);
 		int blendMode = command & PATTR_BLEND_SUB;
 		applyBlending(blendEnabled ? blendMode >> 4 : 0);
-		glDrawArrays(GL_TRIANGLES, 0, vertices.capacity() / 3);
+		glDrawArrays(GL_TRIANGLES, 0, vertices.limit() / 3);
 		glDisableVertexAttribArray(program.aColorData);
 		glDisableVertexAttribArray(program.aPosition);
 		glDisableVertexAttribArray(program.aNormal);
@@ -1062,7 +1292,7 @@ class Render {
 		int blendMode = command & PATTR_BLEND_SUB;
 		applyBlending(blendEnabled ? blendMode >> 4 : 0);
 		program.setTransparency(command & PATTR_COLORKEY);
-		glDrawArrays(GL_TRIANGLES, 0, vertices.capacity() / 3);
+		glDrawArrays(GL_TRIANGLES, 0, vertices.limit() / 3);
 		glDisableVertexAttribArray(program.aPosition);
 		glDisableVertexAttribArray(program.aColorData);
 		glDisableVertexAttribArray(program.aNormal);
@@ -1230,19 +1460,12 @@ class Render {
 	}
 
 	private void updateClip() {
-		bindEglContext();
 		Rect clip = this.clip;
 		int l = clip.left;
 		int t = clip.top;
 		int r = clip.right;
 		int b = clip.bottom;
-		if (l == 0 && t == 0 && r == width && b == height) {
-			glDisable(GL_SCISSOR_TEST);
-		} else {
-			glEnable(GL_SCISSOR_TEST);
-			glScissor(l, t, r - l, b - t);
-		}
-		releaseEglContext();
+		postToGlThread(() -> setClip(l, t, r, b));
 	}
 
 	private int sizeOf(int type) {
@@ -1291,42 +1514,52 @@ class Render {
 	}
 
 	synchronized void drawFigure(Figure figure, int x, int y, FigureLayout layout, Effect3D effect) {
-		bindEglContext();
-		if (!backCopied && preCopy2D) copy2d(true);
-		try {
-			flushStep = 1;
-			for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
-				RenderNode r = stack.get(i);
-				r.run();
+		Texture tex = figure.getTexture();
+		setTexture(tex);
+		Model data = figure.data;
+		Texture[] textures = this.textures;
+		Runnable renderFigure;
+		if (isGpuSkinning(data)) {
+			if (boneMatrices.length < data.boneMatrices.length) {
+				boneMatrices = new float[data.boneMatrices.length];
 			}
-			Texture tex = figure.getTexture();
-			setTexture(tex);
-			Model data = figure.data;
+			float[] bones = boneMatrices;
+			int pattern = figure.getPosture(bones);
+			renderFigure = () -> renderFigure(data, x, y, layout, textures, effect, bones, pattern);
+		} else {
 			FloatBuffer vertices = figure.getVertexData();
 			FloatBuffer normals = figure.getNormalsData();
-			renderFigure(data, x, y, layout, textures, effect, vertices, normals);
-			flushStep = 2;
-			for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
-				RenderNode r = stack.get(i);
-				r.run();
-				r.recycle();
-			}
-			renderFigure(data, x, y, layout, textures, effect, vertices, normals);
-			glDisable(GL_BLEND);
-			glDepthMask(true);
-			glClear(GL_DEPTH_BUFFER_BIT);
+			renderFigure = () -> renderFigure(data, x, y, layout, textures, effect, vertices, normals);
+		}
+		try {
+			runOnGlThread(() -> renderStack(renderFigure));
 		} finally {
 			stack.clear();
-			releaseEglContext();
 		}
 	}
 
-	void bindEglContext() {
-		((EGL10) EGLContext.getEGL()).eglMakeCurrent(eglDisplay, eglWindowSurface, eglWindowSurface, eglContext);
-	}
-
-	void releaseEglContext() {
-		((EGL10) EGLContext.getEGL()).eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+	/**
+	 * Renders the posted nodes together with the figure drawn immediately.
+	 */
+	private void renderStack(Runnable renderFigure) {
+		deleteReleasedBuffers();
+		if (!backCopied && preCopy2D) copy2d(true);
+		flushStep = 1;
+		for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
+			RenderNode r = stack.get(i);
+			r.run();
+		}
+		renderFigure.run();
+		flushStep = 2;
+		for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
+			RenderNode r = stack.get(i);
+			r.run();
+			r.recycle();
+		}
+		renderFigure.run();
+		glDisable(GL_BLEND);
+		glDepthMask(true);
+		glClear(GL_DEPTH_BUFFER_BIT);
 	}
 
 	void reset() {
@@ -1341,4 +1574,13 @@ class Render {
 	Texture getTexture() {
 		return textures == null ? null : textureIdx < textures.length ? textures[textureIdx] : null;
 	}
+
+	private static final class BufferRef extends WeakReference<Model> {
+		final int[] buffers;
+
+		BufferRef(Model model, ReferenceQueue<Model> queue) {
+			super(model, queue);
+			buffers = model.buffers;
+		}
+	}
 }
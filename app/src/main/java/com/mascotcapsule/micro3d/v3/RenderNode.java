@@ -30,10 +30,13 @@ abstract class RenderNode implements Runnable {
 		private Effect3D effect;
 		Texture[] textures;
 		private FigureLayout layout;
-		private final FloatBuffer vertices;
 		private final Model data;
 		private final Figure figure;
-		private final FloatBuffer normals;
+		private FloatBuffer vertices;
+		private FloatBuffer normals;
+		private float[] boneMatrices;
+		private int pattern;
+		private boolean gpuSkinning;
 		private int x;
 		private int y;
 
@@ -41,14 +44,6 @@ abstract class RenderNode implements Runnable {
 			stack = figure.stack;
 			data = figure.data;
 			this.figure = figure;
-			vertices = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
-					.order(ByteOrder.nativeOrder()).asFloatBuffer();
-			if (data.originalNormals != null) {
-				normals = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
-						.order(ByteOrder.nativeOrder()).asFloatBuffer();
-			} else {
-				normals = null;
-			}
 			setData(render, x, y, layout, effect);
 		}
 
@@ -66,7 +61,24 @@ abstract class RenderNode implements Runnable {
 			}
 			this.x = x;
 			this.y = y;
+			gpuSkinning = render.isGpuSkinning(data);
+			if (gpuSkinning) {
+				if (boneMatrices == null) {
+					boneMatrices = new float[data.boneMatrices.length];
+				}
+				pattern = figure.getPosture(boneMatrices);
+				return;
+			}
+			if (vertices == null) {
+				vertices = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
+						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				if (data.originalNormals != null) {
+					normals = ByteBuffer.allocateDirect(data.vertexArrayCapacity)
+							.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				}
+			}
 			synchronized (figure) {
+				data.applySkinning();
 				Utils.fillBuffer(vertices, data.vertices, data.indices);
 				if (normals != null) {
 					Utils.fillBuffer(normals, data.normals, data.indices);
@@ -76,7 +88,11 @@ abstract class RenderNode implements Runnable {
 
 		@Override
 		public void run() {
-			render.renderFigure(data, x, y, layout, textures, effect, vertices, normals);
+			if (gpuSkinning) {
+				render.renderFigure(data, x, y, layout, textures, effect, boneMatrices, pattern);
+			} else {
+				render.renderFigure(data, x, y, layout, textures, effect, vertices, normals);
+			}
 		}
 
 		@Override
@@ -37,13 +37,10 @@ public class Texture {
 	private static final int BMP_VERSION_CORE = 12;
 	private static int sLastId;
 
-	private final FloatBuffer colorKey =
-			ByteBuffer.allocateDirect(3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-
 	boolean isSphere;
 
-	private Bitmap image;
-	private int mTexId = -2;
+	/** Shared by the textures created from the same data */
+	private final Data data;
 	int width;
 	int height;
 
@@ -52,17 +49,14 @@ public class Texture {
 			throw new NullPointerException();
 		}
 		isSphere = !isForModel;
-		prepare(b);
-		image = BitmapFactory.decodeByteArray(b, 0, b.length);
-		if (image == null) {
-			fix(b);
-			image = BitmapFactory.decodeByteArray(b, 0, b.length);
-		}
-		if (image == null) {
-			throw new RuntimeException("Image data error");
+		String key = AssetCache.getKey(b);
+		Data data = AssetCache.TEXTURES.get(key);
+		if (data == null) {
+			data = AssetCache.TEXTURES.put(key, new Data(b.clone()));
 		}
-		width = image.getWidth();
-		height = image.getHeight();
+		this.data = data;
+		width = data.image.getWidth();
+		height = data.image.getHeight();
 	}
 
 	public Texture(String name, boolean isForModel) throws IOException {
@@ -81,12 +75,7 @@ public class Texture {
 	}
 
 	int getId() {
-		if (mTexId == -1) throw new IllegalStateException("Already disposed!!!");
-		if (glIsTexture(mTexId)) {
-			return mTexId;
-		}
-		mTexId = loadTexture(image);
-		return mTexId;
+		return data.getId();
 	}
 
 	private synchronized static int loadTexture(Bitmap bitmap) {
@@ -142,145 +131,184 @@ public class Texture {
 		return b;
 	}
 
-	private void prepare(byte[] bytes) {
-		if (bytes[0] != 'B' || bytes[1] != 'M') {
-			throw new RuntimeException("Not a BMP!");
+	FloatBuffer getColorKey() {
+		return data.getColorKey();
+	}
+
+	/**
+	 * Decoded image of the texture and its GL texture, loaded once on the first use.
+	 */
+	static final class Data {
+		private final FloatBuffer colorKey =
+				ByteBuffer.allocateDirect(3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		private final Bitmap image;
+		private int mTexId = -2;
+
+		/**
+		 * @param b BMP data, modified here
+		 */
+		Data(byte[] b) {
+			prepare(b);
+			Bitmap image = BitmapFactory.decodeByteArray(b, 0, b.length);
+			if (image == null) {
+				fix(b);
+				image = BitmapFactory.decodeByteArray(b, 0, b.length);
+			}
+			if (image == null) {
+				throw new RuntimeException("Image data error");
+			}
+			this.image = image;
 		}
-		int bInfoOffset = BMP_FILE_HEADER_SIZE;
-		int bInfoSize = bytes[bInfoOffset++] & 0xFF | (bytes[bInfoOffset++] & 0xFF) << 8
-				| (bytes[bInfoOffset++] & 0xFF) << 16 | (bytes[bInfoOffset] & 0xFF) << 24;
 
-		if (bInfoSize < BMP_VERSION_CORE || bInfoSize > BMP_VERSION_3) {
-			throw new RuntimeException("Unsupported BMP version = " + bInfoSize);
+		int getId() {
+			if (mTexId == -1) throw new IllegalStateException("Already disposed!!!");
+			if (glIsTexture(mTexId)) {
+				return mTexId;
+			}
+			mTexId = loadTexture(image);
+			return mTexId;
 		}
-		int bpp;
-		int paletteSize;
-		if (bInfoSize == BMP_VERSION_CORE) {
-			bpp = bytes[24] | bytes[25] << 8;
-			paletteSize = 256;
-		} else {
-			bpp = bytes[28] | bytes[29] << 8;
-			paletteSize = bytes[0x2e] & 0xFF | (bytes[0x2f] & 0xFF) << 8
-					| (bytes[0x30] & 0xFF) << 16 | (bytes[0x31] & 0xFF) << 24;
-			if (paletteSize == 0) {
+
+		private void prepare(byte[] bytes) {
+			if (bytes[0] != 'B' || bytes[1] != 'M') {
+				throw new RuntimeException("Not a BMP!");
+			}
+			int bInfoOffset = BMP_FILE_HEADER_SIZE;
+			int bInfoSize = bytes[bInfoOffset++] & 0xFF | (bytes[bInfoOffset++] & 0xFF) << 8
+					| (bytes[bInfoOffset++] & 0xFF) << 16 | (bytes[bInfoOffset] & 0xFF) << 24;
+
+			if (bInfoSize < BMP_VERSION_CORE || bInfoSize > BMP_VERSION_3) {
+				throw new RuntimeException("Unsupported BMP version = " + bInfoSize);
+			}
+			int bpp;
+			int paletteSize;
+			if (bInfoSize == BMP_VERSION_CORE) {
+				bpp = bytes[24] | bytes[25] << 8;
 				paletteSize = 256;
+			} else {
+				bpp = bytes[28] | bytes[29] << 8;
+				paletteSize = bytes[0x2e] & 0xFF | (bytes[0x2f] & 0xFF) << 8
+						| (bytes[0x30] & 0xFF) << 16 | (bytes[0x31] & 0xFF) << 24;
+				if (paletteSize == 0) {
+					paletteSize = 256;
+				}
+				int usedPaletteSize = bytes[0x32] & 0xFF | (bytes[0x33] & 0xFF) << 8
+						| (bytes[0x34] & 0xFF) << 16 | (bytes[0x35] & 0xFF) << 24;
+				if (usedPaletteSize > 0 && usedPaletteSize < paletteSize) {
+					paletteSize = usedPaletteSize;
+				}
 			}
-			int usedPaletteSize = bytes[0x32] & 0xFF | (bytes[0x33] & 0xFF) << 8
-					| (bytes[0x34] & 0xFF) << 16 | (bytes[0x35] & 0xFF) << 24;
-			if (usedPaletteSize > 0 && usedPaletteSize < paletteSize) {
-				paletteSize = usedPaletteSize;
+			if (bpp != 8) { // supports only 8-bit per pixel format
+				throw new RuntimeException("Unsupported BMP format: bpp = " + bpp);
 			}
-		}
-		if (bpp != 8) { // supports only 8-bit per pixel format
-			throw new RuntimeException("Unsupported BMP format: bpp = " + bpp);
-		}
-		int paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
-		// get first color in palette
-		int b = bytes[paletteOffset++] & 0xff;
-		int g = bytes[paletteOffset++] & 0xff;
-		int r = bytes[paletteOffset++] & 0xff;
-		paletteOffset++;
-
-		int[] palette = new int[paletteSize - 1];
-		for (int i = 0; i < palette.length; i++) {
-			palette[i] = bytes[paletteOffset++] & 0xFF | (bytes[paletteOffset++] & 0xFF) << 8
-					| (bytes[paletteOffset++] & 0xFF) << 16;
+			int paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
+			// get first color in palette
+			int b = bytes[paletteOffset++] & 0xff;
+			int g = bytes[paletteOffset++] & 0xff;
+			int r = bytes[paletteOffset++] & 0xff;
 			paletteOffset++;
-		}
-		Arrays.sort(palette);
-		int color0 = b | g << 8 | r << 16;
-		int color = color0;
-		int m = 0;
-		int s = 1;
-		while (true) {
-			int i = Arrays.binarySearch(palette, color);
-			if (i < 0) {
-				break;
+
+			int[] palette = new int[paletteSize - 1];
+			for (int i = 0; i < palette.length; i++) {
+				palette[i] = bytes[paletteOffset++] & 0xFF | (bytes[paletteOffset++] & 0xFF) << 8
+						| (bytes[paletteOffset++] & 0xFF) << 16;
+				paletteOffset++;
 			}
+			Arrays.sort(palette);
+			int color0 = b | g << 8 | r << 16;
+			int color = color0;
+			int m = 0;
+			int s = 1;
+			while (true) {
+				int i = Arrays.binarySearch(palette, color);
+				if (i < 0) {
+					break;
+				}
 
-			switch (m) {
-				case 0:
-					m++;
-					if (b + s <= 0xff) {
-						color = color0 + s;
-						break;
-					}
-				case 1:
-					m++;
-					if (b - s >= 0) {
-						color = color0 - s;
-						break;
-					}
-				case 2:
-					m++;
-					if (g + s <= 0xff) {
-						color = color0 + (s << 8);
-						break;
-					}
-				case 3:
-					m++;
-					if (g - s >= 0) {
-						color = color0 - (s << 8);
-						break;
-					}
-				case 4:
-					m++;
-					if (r + s <= 0xff) {
-						color = color0 + (s << 16);
-						break;
-					}
-				case 5:
-					m = 0;
-					if (r + s <= 0xff) {
-						color = color0 + (s << 16);
-					}
-					s++;
+				switch (m) {
+					case 0:
+						m++;
+						if (b + s <= 0xff) {
+							color = color0 + s;
+							break;
+						}
+					case 1:
+						m++;
+						if (b - s >= 0) {
+							color = color0 - s;
+							break;
+						}
+					case 2:
+						m++;
+						if (g + s <= 0xff) {
+							color = color0 + (s << 8);
+							break;
+						}
+					case 3:
+						m++;
+						if (g - s >= 0) {
+							color = color0 - (s << 8);
+							break;
+						}
+					case 4:
+						m++;
+						if (r + s <= 0xff) {
+							color = color0 + (s << 16);
+							break;
+						}
+					case 5:
+						m = 0;
+						if (r + s <= 0xff) {
+							color = color0 + (s << 16);
+						}
+						s++;
+				}
 			}
+			paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
+			// get first color in palette
+			bytes[paletteOffset++] = (byte) color;
+			bytes[paletteOffset++] = (byte) (color >> 8);
+			bytes[paletteOffset  ] = (byte) (color >> 16);
+			colorKey.put((color >> 16 & 0xff) / 255.0f)
+					.put((color >> 8 & 0xff) / 255.0f)
+					.put((color & 0xff) / 255.0f);
 		}
-		paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
-		// get first color in palette
-		bytes[paletteOffset++] = (byte) color;
-		bytes[paletteOffset++] = (byte) (color >> 8);
-		bytes[paletteOffset  ] = (byte) (color >> 16);
-		colorKey.put((color >> 16 & 0xff) / 255.0f)
-				.put((color >> 8 & 0xff) / 255.0f)
-				.put((color & 0xff) / 255.0f);
-	}
 
-	private boolean containsColor(byte[] bytes, int start, int len, byte b, byte g, byte r) {
-		for (int i = start; i < start + len; ) {
-			if (bytes[i++] != b) {
-				i += 3;
-			} else if (bytes[i++] != g) {
-				i += 2;
-			} else if (bytes[i++] != r) {
-				i += 1;
-			} else {
-				return true;
+		private boolean containsColor(byte[] bytes, int start, int len, byte b, byte g, byte r) {
+			for (int i = start; i < start + len; ) {
+				if (bytes[i++] != b) {
+					i += 3;
+				} else if (bytes[i++] != g) {
+					i += 2;
+				} else if (bytes[i++] != r) {
+					i += 1;
+				} else {
+					return true;
+				}
 			}
+			return false;
 		}
-		return false;
-	}
 
-	private void fix(byte[] b) {
-		int bInfoOffset = BMP_FILE_HEADER_SIZE;
-		int bInfoSize = b[bInfoOffset++] & 0xFF | (b[bInfoOffset++] & 0xFF) << 8
-				| (b[bInfoOffset++] & 0xFF) << 16 | (b[bInfoOffset] & 0xFF) << 24;
-		int paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
-		// check pixel data offset field,
-		int pixelDataOffset = (b[10] & 0xff) | (b[11] & 0xff) << 8 |
-				(b[12] & 0xff) << 16 | (b[13] << 24);
-		int pdo = paletteOffset + 256 * 4; // default offset for 8-bit BMP
-		if (pixelDataOffset != pdo) {
-			b[10] = (byte) ((pdo      ) & 0xff);
-			b[11] = (byte) ((pdo >>  8) & 0xff);
-			b[12] = (byte) ((pdo >> 16) & 0xff);
-			b[13] = (byte) ((pdo >> 24) & 0xff);
+		private void fix(byte[] b) {
+			int bInfoOffset = BMP_FILE_HEADER_SIZE;
+			int bInfoSize = b[bInfoOffset++] & 0xFF | (b[bInfoOffset++] & 0xFF) << 8
+					| (b[bInfoOffset++] & 0xFF) << 16 | (b[bInfoOffset] & 0xFF) << 24;
+			int paletteOffset = bInfoSize + BMP_FILE_HEADER_SIZE;
+			// check pixel data offset field,
+			int pixelDataOffset = (b[10] & 0xff) | (b[11] & 0xff) << 8 |
+					(b[12] & 0xff) << 16 | (b[13] << 24);
+			int pdo = paletteOffset + 256 * 4; // default offset for 8-bit BMP
+			if (pixelDataOffset != pdo) {
+				b[10] = (byte) ((pdo      ) & 0xff);
+				b[11] = (byte) ((pdo >>  8) & 0xff);
+				b[12] = (byte) ((pdo >> 16) & 0xff);
+				b[13] = (byte) ((pdo >> 24) & 0xff);
+			}
 		}
-	}
 
-	FloatBuffer getColorKey() {
-		colorKey.rewind();
-		return colorKey;
+		FloatBuffer getColorKey() {
+			colorKey.rewind();
+			return colorKey;
+		}
 	}
 }
@@ -18,6 +18,7 @@ package com.mascotcapsule.micro3d.v3;
 
 import android.graphics.Bitmap;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
@@ -146,10 +147,45 @@ class Utils {
 		quad[23] = w;
 	}
 
+	/**
+	 * Multiplies two 3x4 affine matrices stored by rows, the result may overwrite any of them.
+	 */
+	static void multiplyMM(float[] m, int mOffset, float[] lm, int lOffset, float[] rm, int rOffset) {
+		float l00 = lm[lOffset    ], l01 = lm[lOffset + 1], l02 = lm[lOffset +  2], l03 = lm[lOffset +  3];
+		float l10 = lm[lOffset + 4], l11 = lm[lOffset + 5], l12 = lm[lOffset +  6], l13 = lm[lOffset +  7];
+		float l20 = lm[lOffset + 8], l21 = lm[lOffset + 9], l22 = lm[lOffset + 10], l23 = lm[lOffset + 11];
+		float r00 = rm[rOffset    ], r01 = rm[rOffset + 1], r02 = rm[rOffset +  2], r03 = rm[rOffset +  3];
+		float r10 = rm[rOffset + 4], r11 = rm[rOffset + 5], r12 = rm[rOffset +  6], r13 = rm[rOffset +  7];
+		float r20 = rm[rOffset + 8], r21 = rm[rOffset + 9], r22 = rm[rOffset + 10], r23 = rm[rOffset + 11];
+
+		m[mOffset     ] = l00 * r00 + l01 * r10 + l02 * r20;
+		m[mOffset +  1] = l00 * r01 + l01 * r11 + l02 * r21;
+		m[mOffset +  2] = l00 * r02 + l01 * r12 + l02 * r22;
+		m[mOffset +  3] = l00 * r03 + l01 * r13 + l02 * r23 + l03;
+		m[mOffset +  4] = l10 * r00 + l11 * r10 + l12 * r20;
+		m[mOffset +  5] = l10 * r01 + l11 * r11 + l12 * r21;
+		m[mOffset +  6] = l10 * r02 + l11 * r12 + l12 * r22;
+		m[mOffset +  7] = l10 * r03 + l11 * r13 + l12 * r23 + l13;
+		m[mOffset +  8] = l20 * r00 + l21 * r10 + l22 * r20;
+		m[mOffset +  9] = l20 * r01 + l21 * r11 + l22 * r21;
+		m[mOffset + 10] = l20 * r02 + l21 * r12 + l22 * r22;
+		m[mOffset + 11] = l20 * r03 + l21 * r13 + l22 * r23 + l23;
+	}
+
 	static native void fillBuffer(FloatBuffer buffer, FloatBuffer vertices, int[] indices);
 
 	static native void glReadPixels(int x, int y, int width, int height, Bitmap bitmapBuffer);
 
+	/**
+	 * Uploads a region of the bitmap into the same region of the bound 2D texture.
+	 */
+	static native void glTexSubImage2D(int x, int y, int width, int height, Bitmap bitmapBuffer);
+
+	/**
+	 * Copies the RGBA rows from the direct buffer into a region of the bitmap.
+	 */
+	static native void copyPixels(Buffer src, int x, int y, int width, int height, Bitmap bitmapBuffer);
+
 	static native void transform(FloatBuffer srcVertices, FloatBuffer dstVertices,
 								 FloatBuffer srcNormals, FloatBuffer dstNormals,
 								 ByteBuffer boneMatrices, float[] actionMatrices);
@@ -25,11 +25,14 @@ import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLUtils;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.DisplayMetrics;
@@ -69,6 +72,7 @@ import javax.microedition.lcdui.graphics.ShaderProgram;
 import javax.microedition.lcdui.keyboard.KeyMapper;
 import javax.microedition.lcdui.keyboard.VirtualKeyboard;
 import javax.microedition.lcdui.overlay.FpsCounter;
+import javax.microedition.lcdui.overlay.PerfHud;
 import javax.microedition.lcdui.overlay.Layer;
 import javax.microedition.lcdui.overlay.Overlay;
 import javax.microedition.lcdui.overlay.OverlayView;
@@ -127,6 +131,7 @@ public abstract class Canvas extends Displayable {
 	private static boolean parallelRedraw;
 	private static boolean forceFullscreen;
 	private static boolean showFps;
+	private static boolean showPerfHud;
 	private static int backgroundColor;
 	private static int scaleRatio;
 	private static int fpsLimit;
@@ -154,11 +159,18 @@ public abstract class Canvas extends Displayable {
 	private boolean sizeChangedCalled;
 	private Image offscreen;
 	private Image offscreenCopy;
+	/** Pictures the frames are recorded into, in the graphics mode 4 */
+	private Picture[] frames;
+	/** Last recorded frame, not drawn into offscreen */
+	private Picture frame;
+	/** Recorded frame shown instead of offscreenCopy */
+	private Picture frontFrame;
 	private int onX, onY, onWidth, onHeight;
-	private long lastFrameTime = System.currentTimeMillis();
+	private final FramePacer framePacer = new FramePacer(fpsLimit);
 	private Handler uiHandler;
 	private Overlay overlay;
 	private FpsCounter fpsCounter;
+	private PerfHud perfHud;
 	private boolean skipLeftSoft;
 	private boolean skipRightSoft;
 	private int[][] lastPointerPos = new int[20][2];
@@ -172,6 +184,8 @@ public abstract class Canvas extends Displayable {
 		super.softBar = softBar;
 		if (graphicsMode == 1) {
 			renderer = new GLRenderer();
+		} else if (graphicsMode == 4) {
+			frames = new Picture[]{new Picture(), new Picture()};
 		}
 		if (parallelRedraw) {
 			uiHandler = new Handler(Looper.getMainLooper(), msg -> repaintScreen());
@@ -204,8 +218,12 @@ public abstract class Canvas extends Displayable {
 	}
 
 	public static void setGraphicsMode(int mode, boolean parallel) {
+		if (mode == 4 && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+			// pictures can't be drawn on hardware canvas
+			mode = 0;
+		}
 		Canvas.graphicsMode = mode;
-		Canvas.parallelRedraw = (mode == 0 || mode == 3) && parallel;
+		Canvas.parallelRedraw = (mode == 0 || mode == 3 || mode == 4) && parallel;
 	}
 
 	public static void setForceFullscreen(boolean forceFullscreen) {
@@ -216,6 +234,10 @@ public abstract class Canvas extends Displayable {
 		Canvas.showFps = showFps;
 	}
 
+	public static void setShowPerfHud(boolean showPerfHud) {
+		Canvas.showPerfHud = showPerfHud;
+	}
+
 	public static void setLimitFps(int fpsLimit) {
 		if (fpsLimit == 0 && (graphicsMode == 1 || graphicsMode == 2)) {
 			// hack for async redraw
@@ -299,6 +321,8 @@ public abstract class Canvas extends Displayable {
 
 	public void onDraw(android.graphics.Canvas canvas) {
 		if (graphicsMode != 2) return; // Fix for Android Pie
+		PerfHud hud = perfHud;
+		long start = hud != null ? System.nanoTime() : 0;
 		CanvasWrapper g = canvasWrapper;
 		g.bind(canvas);
 		g.clear(backgroundColor);
@@ -306,9 +330,10 @@ public abstract class Canvas extends Displayable {
 			offscreenCopy.getBitmap().prepareToDraw();
 			g.drawImage(offscreenCopy, virtualScreen);
 		}
-		if (fpsCounter != null) {
-			fpsCounter.increment();
+		if (hud != null) {
+			hud.addPostTime(System.nanoTime() - start);
 		}
+		onFrameShown();
 	}
 
 	public Single<Bitmap> getScreenShot() {
@@ -319,6 +344,7 @@ public abstract class Canvas extends Displayable {
 			Bitmap bitmap;
 			if (screenshotRawMode) {
 				synchronized (bufferLock) {
+					syncFrontBuffer();
 					bitmap = Bitmap.createBitmap(offscreenCopy.getBitmap(), 0, 0,
 							offscreenCopy.getWidth(), offscreenCopy.getHeight());
 				}
@@ -326,6 +352,7 @@ public abstract class Canvas extends Displayable {
 				bitmap = Bitmap.createBitmap(onWidth, onHeight, Bitmap.Config.ARGB_8888);
 				canvasWrapper.bind(new android.graphics.Canvas(bitmap));
 				synchronized (bufferLock) {
+					syncFrontBuffer();
 					canvasWrapper.drawImage(offscreenCopy, new RectF(0, 0, onWidth, onHeight));
 				}
 			}
@@ -628,36 +655,78 @@ public abstract class Canvas extends Displayable {
 
 	// GameCanvas
 	public void flushBuffer(Image image, int x, int y, int width, int height) {
-		limitFps();
+		boolean present = limitFps();
 		if (width <= 0 || height <= 0 ||
 				x + width < 0 || y + height < 0 ||
 				x >= this.width || y >= this.height) {
 			return;
 		}
+		PerfHud hud = perfHud;
+		long start = hud != null ? System.nanoTime() : 0;
 		synchronized (bufferLock) {
+			syncFrontBuffer();
 			offscreenCopy.getSingleGraphics().flush(image, x, y, width, height);
 		}
-		requestFlushToScreen();
+		if (hud != null) {
+			hud.addCopyTime(System.nanoTime() - start);
+		}
+		if (present) {
+			requestFlushToScreen();
+		}
 	}
 
 	// ExtendedImage
 	public void flushBuffer(Image image, int x, int y) {
-		limitFps();
+		boolean present = limitFps();
+		PerfHud hud = perfHud;
+		long start = hud != null ? System.nanoTime() : 0;
 		synchronized (bufferLock) {
+			syncFrontBuffer();
 			image.copyTo(offscreenCopy, x, y);
 		}
-		requestFlushToScreen();
+		if (hud != null) {
+			hud.addCopyTime(System.nanoTime() - start);
+		}
+		if (present) {
+			requestFlushToScreen();
+		}
 	}
 
-	private void limitFps() {
-		if (fpsLimit <= 0) return;
-		try {
-			long millis = (1000 / fpsLimit) - (System.currentTimeMillis() - lastFrameTime);
-			if (millis > 0) Thread.sleep(millis);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	/**
+	 * Draws the recorded frame into offscreenCopy, so it can be updated partially.
+	 * Must be called under bufferLock.
+	 */
+	private void syncFrontBuffer() {
+		if (frontFrame != null) {
+			offscreenCopy.getSingleGraphics().getCanvas().drawPicture(frontFrame);
+			frontFrame = null;
 		}
-		lastFrameTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Waits for the next frame, if the frame rate is limited.
+	 *
+	 * @return false if the frame is late and should be skipped
+	 */
+	private boolean limitFps() {
+		int fps = fpsLimit;
+		if (fps != framePacer.getFps()) {
+			// the limit was changed from the menu
+			framePacer.setFps(fps);
+			ViewHandler.postEvent(() -> {
+				framePacer.stop();
+				if (surface != null) {
+					framePacer.start();
+				}
+			});
+		}
+		if (!framePacer.isEnabled()) return true;
+		boolean present = framePacer.awaitFrame();
+		FpsCounter counter = fpsCounter;
+		if (counter != null) {
+			counter.setJitter(framePacer.getJitter());
+		}
+		return present;
 	}
 
 	@SuppressLint("NewApi")
@@ -666,9 +735,11 @@ public abstract class Canvas extends Displayable {
 		if (surface == null || !surface.isValid()) {
 			return true;
 		}
+		PerfHud hud = perfHud;
+		long start = hud != null ? System.nanoTime() : 0;
 		try {
 			synchronized (surfaceLock) {
-				android.graphics.Canvas canvas = graphicsMode == 3 ?
+				android.graphics.Canvas canvas = graphicsMode >= 3 ?
 						surface.lockHardwareCanvas() : surface.lockCanvas(null);
 				if (canvas == null) {
 					return true;
@@ -677,13 +748,18 @@ public abstract class Canvas extends Displayable {
 				g.bind(canvas);
 				g.clear(backgroundColor);
 				synchronized (bufferLock) {
-					g.drawImage(offscreenCopy, virtualScreen);
+					if (frontFrame != null) {
+						g.drawPicture(frontFrame, virtualScreen);
+					} else {
+						g.drawImage(offscreenCopy, virtualScreen);
+					}
 				}
 				surface.unlockCanvasAndPost(canvas);
 			}
-			if (fpsCounter != null) {
-				fpsCounter.increment();
+			if (hud != null) {
+				hud.addPostTime(System.nanoTime() - start);
 			}
+			onFrameShown();
 			if (parallelRedraw) uiHandler.removeMessages(0);
 		} catch (Exception e) {
 			Log.w(TAG, "repaintScreen: " + e);
@@ -802,14 +878,17 @@ public abstract class Canvas extends Displayable {
 
 		@Override
 		public void onDrawFrame(GL10 gl) {
+			PerfHud hud = perfHud;
+			long start = hud != null ? System.nanoTime() : 0;
 			glClear(GL_COLOR_BUFFER_BIT);
 			synchronized (bufferLock) {
 				GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, offscreenCopy.getBitmap(), 0);
 			}
 			glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
-			if (fpsCounter != null) {
-				fpsCounter.increment();
+			if (hud != null) {
+				hud.addPostTime(System.nanoTime() - start);
 			}
+			onFrameShown();
 		}
 
 		private void initTex() {
@@ -918,14 +997,57 @@ public abstract class Canvas extends Displayable {
 				return;
 			}
 			Graphics g = offscreen.getSingleGraphics();
+			Picture previous = frame;
+			// only full repaints can be recorded, partial ones need the previous content
+			boolean record = frames != null && l == 0 && t == 0 && r == width && b == height;
+			if (previous != null && !record) {
+				g.reset(0, 0, width, height);
+				g.getCanvas().drawPicture(previous);
+				frame = previous = null;
+			}
 			g.reset(l, t, r, b);
+			if (record) {
+				g.beginRecording(frames[0] == previous ? frames[1] : frames[0], previous);
+			}
+			PerfHud hud = perfHud;
+			long start = hud != null ? System.nanoTime() : 0;
 			try {
 				paint(g);
 			} catch (Throwable e) {
 				Log.e(TAG, "Error in paint()", e);
 			}
+			if (record) {
+				frame = g.endRecording();
+			}
+			if (hud != null) {
+				long now = System.nanoTime();
+				hud.addPaintTime(now - start);
+				start = now;
+			}
 			synchronized (bufferLock) {
-				offscreen.copyTo(offscreenCopy);
+				if (frame != null) {
+					frontFrame = frame;
+				} else {
+					if (frontFrame != null) {
+						// offscreenCopy is outdated
+						frontFrame = null;
+						l = 0;
+						t = 0;
+						r = width;
+						b = height;
+					} else {
+						// paint() may have set a wider clip than the repainted region
+						Rect bounds = g.getClipBounds();
+						l = Math.max(0, Math.min(l, bounds.left));
+						t = Math.max(0, Math.min(t, bounds.top));
+						r = Math.min(width, Math.max(r, bounds.right));
+						b = Math.min(height, Math.max(b, bounds.bottom));
+					}
+					offscreenCopy.getSingleGraphics().flush(offscreen, l, t, r - l, b - t);
+				}
+			}
+			if (hud != null) {
+				hud.addCopyTime(System.nanoTime() - start);
 			}
 			if (surface == null || !surface.isValid()) {
 				return;
@@ -1200,10 +1322,15 @@ public abstract class Canvas extends Displayable {
 			surface = holder.getSurface();
 			Display.postEvent(CanvasEvent.getInstance(Canvas.this, CanvasEvent.SHOW_NOTIFY));
 			repaintInternal();
+			framePacer.start();
 			if (showFps) {
 				fpsCounter = new FpsCounter(overlayView);
 				overlayView.addLayer(fpsCounter);
 			}
+			if (showPerfHud) {
+				perfHud = new PerfHud(overlayView);
+				overlayView.addLayer(perfHud);
+			}
 			overlayView.addLayer(softBar, 0);
 			overlayView.setVisibility(true);
 			overlay = ContextHolder.getVk();
@@ -1221,11 +1348,17 @@ public abstract class Canvas extends Displayable {
 				surface = null;
 			}
 			Display.postEvent(CanvasEvent.getInstance(Canvas.this, CanvasEvent.HIDE_NOTIFY));
+			framePacer.stop();
 			if (fpsCounter != null) {
 				fpsCounter.stop();
 				overlayView.removeLayer(fpsCounter);
 				fpsCounter = null;
 			}
+			if (perfHud != null) {
+				perfHud.stop();
+				overlayView.removeLayer(perfHud);
+				perfHud = null;
+			}
 			overlayView.removeLayer(softBar);
 			softBar.closeMenu();
 			overlayView.setVisibility(false);
@@ -1238,6 +1371,16 @@ public abstract class Canvas extends Displayable {
 
 	}
 
+	private void onFrameShown() {
+		if (fpsCounter != null) {
+			fpsCounter.increment();
+		}
+		PerfHud hud = perfHud;
+		if (hud != null) {
+			hud.frameShown(Display.getEventQueue());
+		}
+	}
+
 	private void requestFlushToScreen() {
 		if (graphicsMode == 1) {
 			if (innerView != null) {
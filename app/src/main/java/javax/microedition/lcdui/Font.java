@@ -22,6 +22,7 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Typeface;
 import android.util.DisplayMetrics;
+import android.util.LruCache;
 import android.util.TypedValue;
 
 import java.util.Arrays;
@@ -59,6 +60,11 @@ public class Font {
 	private static final Font[] fonts = new Font[FONT_COUNT];
 	private static final float[] sizes = {22, 18, 26};
 
+	/** Number of the measured strings kept by every font */
+	private static final int WIDTH_CACHE_SIZE = 256;
+	/** Characters that get their width stored in {@link #charWidths} */
+	private static final int CHAR_WIDTH_TABLE_SIZE = 0x500;
+
 	private static boolean antiAlias;
 
 	final Paint paint = new Paint();
@@ -69,6 +75,11 @@ public class Font {
 	private final int style;
 	private final int size;
 
+	/** Widths of the Latin, Greek and Cyrillic characters, -1 if not measured yet */
+	private final int[] charWidths = new int[CHAR_WIDTH_TABLE_SIZE];
+	private final LruCache<String, Integer> stringWidths = new LruCache<>(WIDTH_CACHE_SIZE);
+	private final char[] charBuffer = new char[1];
+
 	@SuppressLint("WrongConstant")
 	public Font(int face, int style, int size, float height) {
 		this.face = face;
@@ -102,6 +113,7 @@ public class Font {
 		this.height = (int) Math.ceil(paint.getFontMetrics(fm));
 		this.ascent = fm.ascent;
 		this.descent = fm.descent;
+		Arrays.fill(charWidths, -1);
 	}
 
 	public static Font getFont(int fontSpecifier) {
@@ -150,7 +162,22 @@ public class Font {
 	}
 
 	public int charWidth(char c) {
-		return (int) Math.ceil(paint.measureText(new char[]{c}, 0, 1));
+		if (c < CHAR_WIDTH_TABLE_SIZE) {
+			int width = charWidths[c];
+			if (width < 0) {
+				width = measureChar(c);
+				charWidths[c] = width;
+			}
+			return width;
+		}
+		return measureChar(c);
+	}
+
+	private int measureChar(char c) {
+		synchronized (charBuffer) {
+			charBuffer[0] = c;
+			return (int) Math.ceil(paint.measureText(charBuffer, 0, 1));
+		}
 	}
 
 	public int charsWidth(char[] ch, int offset, int length) {
@@ -158,13 +185,55 @@ public class Font {
 	}
 
 	public int stringWidth(String text) {
-		return (int) Math.ceil(paint.measureText(text));
+		Integer width = stringWidths.get(text);
+		if (width == null) {
+			width = (int) Math.ceil(paint.measureText(text));
+			stringWidths.put(text, width);
+		}
+		return width;
 	}
 
 	public int substringWidth(String str, int offset, int len) {
 		return (int) paint.measureText(str, offset, offset + len);
 	}
 
+	/**
+	 * Prepares the paint for drawing text with the given anchor and color.
+	 */
+	Paint getTextPaint(int anchor, int color) {
+		Paint.Align align;
+		if ((anchor & Graphics.RIGHT) != 0) {
+			align = Paint.Align.RIGHT;
+		} else if ((anchor & Graphics.HCENTER) != 0) {
+			align = Paint.Align.CENTER;
+		} else {
+			align = Paint.Align.LEFT;
+		}
+		// compared with the paint itself, fonts are shared between threads
+		if (paint.getTextAlign() != align) {
+			paint.setTextAlign(align);
+		}
+		if (paint.getColor() != color) {
+			paint.setColor(color);
+		}
+		return paint;
+	}
+
+	/**
+	 * Returns the baseline position of text drawn with the given anchor.
+	 */
+	float getBaseline(int y, int anchor) {
+		if ((anchor & Graphics.BOTTOM) != 0) {
+			return y - descent;
+		} else if ((anchor & Graphics.VCENTER) != 0) {
+			return y - (descent + ascent) / 2.0f;
+		} else if ((anchor & Graphics.BASELINE) != 0) {
+			return y;
+		} else {
+			return y - ascent;
+		}
+	}
+
 	public boolean isBold() {
 		return style == STYLE_BOLD;
 	}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui;
+
+import android.os.Build;
+import android.view.Choreographer;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.microedition.shell.MicroActivity;
+import javax.microedition.util.ContextHolder;
+
+/**
+ * Limits the rate of the MIDlet frames.
+ * <p>
+ * Frame deadlines are kept on an ideal nanosecond timeline, so the rate does not drift.
+ * When the display vsync is known, every wakeup is moved to the nearest vsync, so targets
+ * that are not a divisor of the refresh rate (e.g. 25 fps at 60 Hz) alternate evenly
+ * between the neighbouring vsync counts instead of beating against the display.
+ */
+class FramePacer {
+	/** Don't present frames that are late for more than one interval */
+	private static final boolean FRAME_SKIP = Boolean.getBoolean("fps.frame-skip");
+
+	private final boolean frameSkip;
+
+	private volatile int fps;
+	private volatile long interval;
+
+	private VsyncCallback vsyncCallback;
+	private volatile boolean running;
+	private volatile long lastVsync;
+	private volatile long vsyncPeriod;
+
+	private long deadline;
+	private long lastFrame;
+	private boolean skipped;
+	private volatile long jitter;
+
+	/**
+	 * @param fps target frame rate, 0 for no limit
+	 */
+	FramePacer(int fps) {
+		this(fps, FRAME_SKIP);
+	}
+
+	/**
+	 * @param fps       target frame rate, 0 for no limit
+	 * @param frameSkip true to skip the frames late for more than one interval
+	 */
+	FramePacer(int fps, boolean frameSkip) {
+		this.frameSkip = frameSkip;
+		setFps(fps);
+	}
+
+	int getFps() {
+		return fps;
+	}
+
+	/**
+	 * Changes the target frame rate. The vsync following is not affected,
+	 * call {@link #stop()} and {@link #start()} on the UI thread to update it.
+	 *
+	 * @param fps target frame rate, 0 for no limit
+	 */
+	synchronized void setFps(int fps) {
+		this.fps = fps;
+		interval = fps > 0 ? TimeUnit.SECONDS.toNanos(1) / fps : 0;
+		deadline = 0;
+		lastFrame = 0;
+		skipped = false;
+		jitter = 0;
+	}
+
+	boolean isEnabled() {
+		return interval > 0;
+	}
+
+	/**
+	 * Starts following the display vsync. Must be called on the UI thread.
+	 */
+	void start() {
+		if (interval <= 0 || running || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			return;
+		}
+		MicroActivity activity = ContextHolder.getActivity();
+		if (activity == null) {
+			return;
+		}
+		float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+		if (refreshRate <= 0) {
+			return;
+		}
+		vsyncPeriod = (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+		if (interval < vsyncPeriod) {
+			// the frames go faster than the display, nothing to align
+			return;
+		}
+		running = true;
+		if (vsyncCallback == null) {
+			vsyncCallback = new VsyncCallback();
+		}
+		vsyncCallback.post();
+	}
+
+	/**
+	 * Stops following the display vsync. Must be called on the UI thread.
+	 */
+	void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		lastVsync = 0;
+		vsyncCallback.remove();
+	}
+
+	/**
+	 * Blocks the calling thread until the next frame is due.
+	 * Frames from several threads are paced one after another.
+	 * Two frames in a row are never skipped, so a MIDlet that is always
+	 * late still gets every other frame on the screen.
+	 *
+	 * @return false if the frame is late and should not be presented
+	 */
+	synchronized boolean awaitFrame() {
+		long interval = this.interval;
+		if (interval <= 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		long target = deadline + interval;
+		boolean late = false;
+		if (now - target > interval) {
+			// far behind, don't try to catch up
+			target = now;
+			late = deadline != 0;
+		}
+		long wakeup = alignToVsync(target);
+		while (true) {
+			long remaining = wakeup - System.nanoTime();
+			if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			LockSupport.parkNanos(this, remaining);
+		}
+		deadline = target;
+
+		now = System.nanoTime();
+		if (lastFrame != 0 && !late) {
+			long error = Math.abs(now - lastFrame - interval);
+			jitter += (error - jitter) / 16;
+		}
+		lastFrame = now;
+		skipped = late && frameSkip && !skipped;
+		return !skipped;
+	}
+
+	/**
+	 * Returns the vsync time closest to the given time.
+	 */
+	private long alignToVsync(long time) {
+		long vsync = lastVsync;
+		long period = vsyncPeriod;
+		if (vsync == 0 || period <= 0) {
+			return time;
+		}
+		long delta = time - vsync;
+		long count = (delta + (delta >= 0 ? period / 2 : -period / 2)) / period;
+		return vsync + count * period;
+	}
+
+	/**
+	 * @return mean deviation of the frame intervals from the target, in nanoseconds
+	 */
+	long getJitter() {
+		return jitter;
+	}
+
+	@RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class VsyncCallback implements Choreographer.FrameCallback {
+		private final Choreographer choreographer = Choreographer.getInstance();
+
+		void post() {
+			choreographer.postFrameCallback(this);
+		}
+
+		void remove() {
+			choreographer.removeFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			lastVsync = frameTimeNanos;
+			if (running) {
+				choreographer.postFrameCallback(this);
+			}
+		}
+	}
+}
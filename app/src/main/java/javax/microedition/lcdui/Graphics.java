@@ -26,6 +26,7 @@ import android.graphics.DashPathEffect;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Region;
@@ -49,8 +50,16 @@ public class Graphics implements
 	public static final int SOLID = 0;
 	public static final int DOTTED = 1;
 
-	private final Canvas canvas;
+	private final Canvas bitmapCanvas;
 	private final Image image;
+	/** Canvas the drawing goes to, either the image canvas or a recording one */
+	private Canvas canvas;
+	/** Frame being recorded, see {@link #beginRecording(Picture, Picture)} */
+	private Picture recording;
+	/** Previous frame, needed if the recorded frame turns out not to cover the screen */
+	private Picture previousFrame;
+	/** Nothing is drawn yet into the recording */
+	private boolean recordingPending;
 
 	private final Paint drawPaint = new Paint();
 	private final Paint fillPaint = new Paint();
@@ -59,9 +68,15 @@ public class Graphics implements
 	private int translateY;
 
 	private final Rect clip = new Rect();
+	/** Union of the clips set since the last {@link #reset}, in the image coordinates */
+	private final Rect clipBounds = new Rect();
 	private final Rect rect = new Rect();
 	private final RectF rectF = new RectF();
 	private final Path path = new Path();
+	private final Matrix matrix = new Matrix();
+	/** Scratch buffer for drawRGB, grows as needed */
+	private int[] rgbBuffer;
+	private final char[] charBuffer = new char[1];
 
 	private final DashPathEffect dashPathEffect = new DashPathEffect(new float[]{5, 5}, 0);
 	private int stroke = SOLID;
@@ -71,7 +86,8 @@ public class Graphics implements
 
 	Graphics(Image image) {
 		this.image = image;
-		canvas = new Canvas(image.getBitmap());
+		bitmapCanvas = new Canvas(image.getBitmap());
+		canvas = bitmapCanvas;
 		canvas.save();
 		canvas.clipRect(image.getBounds());
 		canvas.getClipBounds(clip);
@@ -89,15 +105,125 @@ public class Graphics implements
 		canvas.save();
 		canvas.clipRect(cl, ct, cr, cb);
 		canvas.getClipBounds(this.clip);
+		clipBounds.set(clip);
 		translateX = 0;
 		translateY = 0;
 	}
 
+	/**
+	 * @return bounds of all the pixels that could be drawn since the last {@link #reset},
+	 * as {@link #setClip} can widen the clip set by the reset; the rect must not be modified
+	 */
+	public Rect getClipBounds() {
+		return clipBounds;
+	}
+
 	public Canvas getCanvas() {
+		ensureBitmap();
 		return canvas;
 	}
 
+	/**
+	 * Starts recording the drawing commands of a frame instead of drawing them into the image.
+	 * <p>
+	 * The frame is kept recorded only if the first drawing operation fully covers
+	 * the image with opaque pixels. Otherwise, or if the pixels have to be read,
+	 * drawing falls back to the image, which gets the previous frame content.
+	 *
+	 * @param picture  picture to record into
+	 * @param previous recorded frame not yet drawn into the image, may be null
+	 */
+	void beginRecording(Picture picture, Picture previous) {
+		recording = picture;
+		previousFrame = previous;
+		recordingPending = true;
+		canvas = picture.beginRecording(image.getWidth(), image.getHeight());
+		canvas.save();
+		canvas.clipRect(clip);
+	}
+
+	/**
+	 * Finishes the frame recording.
+	 *
+	 * @return the recorded frame, or null if the image holds the frame
+	 */
+	Picture endRecording() {
+		Picture picture = recording;
+		if (picture == null) {
+			return null;
+		}
+		picture.endRecording();
+		if (recordingPending) {
+			// nothing was drawn, the frame is the same as before
+			picture = previousFrame;
+			recordingPending = false;
+		}
+		recording = null;
+		previousFrame = null;
+		restoreState();
+		return picture;
+	}
+
+	private void checkCover(float left, float top, float right, float bottom, boolean opaque) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		recordingPending = false;
+		left += translateX;
+		top += translateY;
+		right += translateX;
+		bottom += translateY;
+		if (!opaque || left > 0 || top > 0 || right < w || bottom < h
+				|| clip.left + translateX > 0 || clip.top + translateY > 0
+				|| clip.right + translateX < w || clip.bottom + translateY < h) {
+			cancelRecording();
+		}
+	}
+
+	private void cancelRecording() {
+		recording.endRecording();
+		recording = null;
+		recordingPending = false;
+		bitmapCanvas.restoreToCount(1);
+		if (previousFrame != null) {
+			bitmapCanvas.drawPicture(previousFrame);
+			previousFrame = null;
+		}
+		restoreState();
+	}
+
+	/**
+	 * Makes sure the drawing goes to the image, so its pixels can be accessed
+	 */
+	private void ensureBitmap() {
+		if (recording == null) {
+			return;
+		}
+		if (recordingPending) {
+			cancelRecording();
+			return;
+		}
+		Picture picture = recording;
+		picture.endRecording();
+		recording = null;
+		previousFrame = null;
+		bitmapCanvas.restoreToCount(1);
+		bitmapCanvas.drawPicture(picture);
+		restoreState();
+	}
+
+	/**
+	 * Applies the current translation and clip to the image canvas and makes it current
+	 */
+	private void restoreState() {
+		canvas = bitmapCanvas;
+		canvas.restoreToCount(1);
+		canvas.save();
+		canvas.translate(translateX, translateY);
+		canvas.clipRect(clip);
+	}
+
 	public void fillPolygon(int[] xPoints, int xOffset, int[] yPoints, int yOffset, int nPoints) {
+		if (recordingPending) cancelRecording();
 		if (nPoints > 0) {
 			Path path = computePath(xPoints, xOffset, yPoints, yOffset, nPoints);
 			canvas.drawPath(path, fillPaint);
@@ -105,6 +231,7 @@ public class Graphics implements
 	}
 
 	public void drawPolygon(int[] xPoints, int xOffset, int[] yPoints, int yOffset, int nPoints) {
+		if (recordingPending) cancelRecording();
 		if (nPoints > 0) {
 			Path path = computePath(xPoints, xOffset, yPoints, yOffset, nPoints);
 			canvas.drawPath(path, drawPaint);
@@ -200,6 +327,8 @@ public class Graphics implements
 			canvas.clipRect(clip, Region.Op.REPLACE);
 		}
 		canvas.getClipBounds(clip);
+		clipBounds.union(clip.left + translateX, clip.top + translateY,
+				clip.right + translateX, clip.bottom + translateY);
 	}
 
 	public void clipRect(int x, int y, int width, int height) {
@@ -241,6 +370,7 @@ public class Graphics implements
 	}
 
 	public void drawLine(int x1, int y1, int x2, int y2) {
+		if (recordingPending) cancelRecording();
 		if (x2 >= x1) {
 			x2++;
 		} else {
@@ -257,34 +387,42 @@ public class Graphics implements
 	}
 
 	public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		if (recordingPending) cancelRecording();
 		if (width < 0 || height < 0) return;
 		rectF.set(x, y, x + width, y + height);
 		canvas.drawArc(rectF, -startAngle, -arcAngle, false, drawPaint);
 	}
 
 	public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		if (recordingPending) cancelRecording();
 		if (width <= 0 || height <= 0) return;
 		rectF.set(x, y, x + width, y + height);
 		canvas.drawArc(rectF, -startAngle, -arcAngle, true, fillPaint);
 	}
 
 	public void drawRect(int x, int y, int width, int height) {
+		if (recordingPending) cancelRecording();
 		if (width < 0 || height < 0) return;
 		canvas.drawRect(x, y, x + width, y + height, drawPaint);
 	}
 
 	public void fillRect(int x, int y, int width, int height) {
 		if (width <= 0 || height <= 0) return;
+		if (recordingPending) {
+			checkCover(x, y, x + width, y + height, Color.alpha(fillPaint.getColor()) == 255);
+		}
 		canvas.drawRect(x, y, x + width, y + height, fillPaint);
 	}
 
 	public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		if (recordingPending) cancelRecording();
 		if (width < 0 || height < 0) return;
 		rectF.set(x, y, x + width, y + height);
 		canvas.drawRoundRect(rectF, arcWidth * 0.5f, arcHeight * 0.5f, drawPaint);
 	}
 
 	public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		if (recordingPending) cancelRecording();
 		if (width < 0 || height < 0) return;
 		rectF.set(x, y, x + width, y + height);
 		canvas.drawRoundRect(rectF, arcWidth * 0.5f, arcHeight * 0.5f, fillPaint);
@@ -295,56 +433,21 @@ public class Graphics implements
 	}
 
 	public void drawChar(char character, int x, int y, int anchor) {
-		drawChars(new char[]{character}, 0, 1, x, y, anchor);
+		charBuffer[0] = character;
+		drawChars(charBuffer, 0, 1, x, y, anchor);
 	}
 
 	public void drawChars(char[] data, int offset, int length, int x, int y, int anchor) {
-		Paint paint = font.paint;
-		if ((anchor & Graphics.RIGHT) != 0) {
-			paint.setTextAlign(Paint.Align.RIGHT);
-		} else if ((anchor & Graphics.HCENTER) != 0) {
-			paint.setTextAlign(Paint.Align.CENTER);
-		} else {
-			paint.setTextAlign(Paint.Align.LEFT);
-		}
-
-		float ly;
-		if ((anchor & Graphics.BOTTOM) != 0) {
-			ly = y - font.descent;
-		} else if ((anchor & Graphics.VCENTER) != 0) {
-			ly = y - (font.descent + font.ascent) / 2.0f;
-		} else if ((anchor & Graphics.BASELINE) != 0) {
-			ly = y;
-		} else {
-			ly = y - font.ascent;
-		}
-
-		paint.setColor(fillPaint.getColor());
+		if (recordingPending) cancelRecording();
+		Paint paint = font.getTextPaint(anchor, fillPaint.getColor());
+		float ly = font.getBaseline(y, anchor);
 		canvas.drawText(data, offset, length, x, ly, paint);
 	}
 
 	public void drawString(String text, int x, int y, int anchor) {
-		Paint paint = font.paint;
-		if ((anchor & Graphics.RIGHT) != 0) {
-			paint.setTextAlign(Paint.Align.RIGHT);
-		} else if ((anchor & Graphics.HCENTER) != 0) {
-			paint.setTextAlign(Paint.Align.CENTER);
-		} else {
-			paint.setTextAlign(Paint.Align.LEFT);
-		}
-
-		float ly;
-		if ((anchor & Graphics.BOTTOM) != 0) {
-			ly = y - font.descent;
-		} else if ((anchor & Graphics.VCENTER) != 0) {
-			ly = y - (font.descent + font.ascent) / 2.0f;
-		} else if ((anchor & Graphics.BASELINE) != 0) {
-			ly = y;
-		} else {
-			ly = y - font.ascent;
-		}
-
-		paint.setColor(fillPaint.getColor());
+		if (recordingPending) cancelRecording();
+		Paint paint = font.getTextPaint(anchor, fillPaint.getColor());
+		float ly = font.getBaseline(y, anchor);
 		canvas.drawText(text, x, ly, paint);
 	}
 
@@ -367,31 +470,20 @@ public class Graphics implements
 			ly = y;
 		}
 
-		canvas.drawBitmap(image.getBitmap(), lx, ly, null);
+		Bitmap bitmap = image.getBitmap();
+		if (recording != null && image.isMutable()) {
+			// its pixels may change before the recorded frame is shown
+			ensureBitmap();
+		} else if (recordingPending) {
+			checkCover(lx, ly, lx + bitmap.getWidth(), ly + bitmap.getHeight(), !bitmap.hasAlpha());
+		}
+		canvas.drawBitmap(bitmap, lx, ly, null);
 	}
 
 	public void drawSubstring(String str, int offset, int len, int x, int y, int anchor) {
-		Paint paint = font.paint;
-		if ((anchor & Graphics.RIGHT) != 0) {
-			paint.setTextAlign(Paint.Align.RIGHT);
-		} else if ((anchor & Graphics.HCENTER) != 0) {
-			paint.setTextAlign(Paint.Align.CENTER);
-		} else {
-			paint.setTextAlign(Paint.Align.LEFT);
-		}
-
-		float ly;
-		if ((anchor & Graphics.BOTTOM) != 0) {
-			ly = y - font.descent;
-		} else if ((anchor & Graphics.VCENTER) != 0) {
-			ly = y - (font.descent + font.ascent) / 2.0f;
-		} else if ((anchor & Graphics.BASELINE) != 0) {
-			ly = y;
-		} else {
-			ly = y - font.ascent;
-		}
-
-		paint.setColor(fillPaint.getColor());
+		if (recordingPending) cancelRecording();
+		Paint paint = font.getTextPaint(anchor, fillPaint.getColor());
+		float ly = font.getBaseline(y, anchor);
 		canvas.drawText(str, offset, offset + len, x, ly, paint);
 	}
 
@@ -404,8 +496,12 @@ public class Graphics implements
 		float dx;
 		float dy;
 		srcR.set(x_src, y_src, x_src + width, y_src + height);
+		if (recording != null && image.isMutable()) {
+			ensureBitmap();
+		}
 
-		Matrix matrix = new Matrix();
+		Matrix matrix = this.matrix;
+		matrix.reset();
 		switch (transform) {
 			case TRANS_NONE: {
 				if ((anchor & Graphics.RIGHT) != 0) {
@@ -423,6 +519,9 @@ public class Graphics implements
 					dy = y_dst;
 				}
 
+				if (recordingPending) {
+					checkCover(dx, dy, dx + width, dy + height, !image.getBitmap().hasAlpha());
+				}
 				dstR.set(dx, dy, dx + width, dy + height);
 				canvas.drawBitmap(image.getBitmap(), srcR, dstR, null);
 				return;
@@ -454,6 +553,7 @@ public class Graphics implements
 			default:
 				throw new IllegalArgumentException("Illegal transform=" + transform);
 		}
+		if (recordingPending) cancelRecording();
 
 		dstR.set(0, 0, width, height);
 		matrix.mapRect(dstR);
@@ -486,6 +586,7 @@ public class Graphics implements
 	}
 
 	public void drawRGB(int[] rgbData, int offset, int scanlength, int x, int y, int width, int height, boolean processAlpha) {
+		if (recordingPending) cancelRecording();
 		if (rgbData == null) {
 			throw new NullPointerException();
 		}
@@ -509,9 +610,18 @@ public class Graphics implements
 			}
 		}
 
-		// copy pixels to a new array and apply processAlpha flag here,
+		if (processAlpha && scanlength >= width) {
+			// pixels can be drawn as is
+			canvas.drawBitmap(rgbData, offset, scanlength, x, y, width, height, true, null);
+			return;
+		}
+		// copy pixels to the scratch buffer and apply processAlpha flag here,
 		// to avoid Android restrictions
-		int[] pixels = new int[height * width];
+		int length = height * width;
+		int[] pixels = rgbBuffer;
+		if (pixels == null || pixels.length < length) {
+			pixels = rgbBuffer = new int[length];
+		}
 		int alphaCorrection = processAlpha ? Color.TRANSPARENT : Color.BLACK;
 		for (int i = 0; i < height; i++) {
 			int s = offset + i * scanlength;
@@ -528,6 +638,7 @@ public class Graphics implements
 	public void copyArea(int x_src, int y_src, int width, int height,
 						 int x_dest, int y_dest, int anchor) {
 		if (width <= 0 || height <= 0) return;
+		ensureBitmap();
 		final int[] pixels = new int[width * height];
 		image.getBitmap().getPixels(pixels, 0, width, x_src, y_src, width, height);
 		float dx;
@@ -551,6 +662,7 @@ public class Graphics implements
 
 	public void getPixels(int[] pixels, int offset, int stride,
 						  int x, int y, int width, int height) {
+		ensureBitmap();
 		Bitmap b = image.getBitmap();
 		int w = Math.min(width, b.getWidth() - x);
 		int h = Math.min(height, b.getHeight() - y);
@@ -558,10 +670,12 @@ public class Graphics implements
 	}
 
 	public Bitmap getBitmap() {
+		ensureBitmap();
 		return image.getBitmap();
 	}
 
 	void flush(Image image, int x, int y, int width, int height) {
+		ensureBitmap();
 		rect.set(x, y, x + width, y + height);
 		canvas.drawBitmap(image.getBitmap(), rect, rect, null);
 	}
@@ -31,6 +31,10 @@ import javax.microedition.shell.AppClassLoader;
 import ru.playsoftware.j2meloader.util.PNGUtils;
 
 public class Image {
+	private static ImageCache cache;
+	/** Scratch buffer for createRGBImage, grows as needed */
+	private static int[] rgbBuffer;
+
 	private Bitmap bitmap;
 	private Graphics graphics;
 	private final Rect bounds;
@@ -58,7 +62,30 @@ public class Image {
 		return new Image(bitmap);
 	}
 
+	/**
+	 * Enables caching of images created by {@link #createImage(String)}.
+	 */
+	public static void setCacheEnabled(boolean enabled) {
+		if (enabled) {
+			if (cache == null) {
+				cache = new ImageCache((int) (Runtime.getRuntime().maxMemory() / 8));
+			}
+		} else if (cache != null) {
+			cache.clear();
+			cache = null;
+		}
+	}
+
 	public static Image createImage(String resname) throws IOException {
+		ImageCache cache = Image.cache;
+		String name = null;
+		if (cache != null && resname != null && !resname.isEmpty()) {
+			name = AppClassLoader.getResourceName(null, resname);
+			Image image = cache.get(name);
+			if (image != null) {
+				return image;
+			}
+		}
 		Bitmap b;
 		try (InputStream stream = AppClassLoader.getResourceAsStream(null, resname)) {
 			if (stream == null) {
@@ -69,7 +96,11 @@ public class Image {
 		if (b == null) {
 			throw new IOException("Can't decode image: " + resname);
 		}
-		return new Image(b);
+		Image image = new Image(b);
+		if (name != null) {
+			cache.put(name, image);
+		}
+		return image;
 	}
 
 	public static Image createImage(InputStream stream) throws IOException {
@@ -102,11 +133,17 @@ public class Image {
 	public static Image createRGBImage(int[] rgb, int width, int height, boolean processAlpha) {
 		if (!processAlpha) {
 			final int length = width * height;
-			int[] tmp = new int[length];
-			for (int i = 0; i < length; i++) {
-				tmp[i] = rgb[i] | 0xFF000000;
+			synchronized (Image.class) {
+				int[] tmp = rgbBuffer;
+				if (tmp == null || tmp.length < length) {
+					tmp = rgbBuffer = new int[length];
+				}
+				for (int i = 0; i < length; i++) {
+					tmp[i] = rgb[i] | 0xFF000000;
+				}
+				// pixels are copied into the bitmap, so the buffer can be reused
+				return new Image(Bitmap.createBitmap(tmp, width, height, Bitmap.Config.ARGB_8888));
 			}
-			rgb = tmp;
 		}
 		return new Image(Bitmap.createBitmap(rgb, width, height, Bitmap.Config.ARGB_8888));
 	}
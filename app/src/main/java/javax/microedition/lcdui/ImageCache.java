@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui;
+
+import android.util.LruCache;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Cache of immutable images loaded from the MIDlet resources.
+ * <p>
+ * Recently used images are strongly held while their bitmaps fit into the budget,
+ * the evicted ones are kept through soft references until the GC needs the memory.
+ */
+class ImageCache {
+	private final LruCache<String, Image> images;
+	private final HashMap<String, SoftReference<Image>> evicted = new HashMap<>();
+
+	ImageCache(int maxBytes) {
+		images = new LruCache<String, Image>(maxBytes) {
+			@Override
+			protected int sizeOf(String key, Image value) {
+				return value.getBitmap().getByteCount();
+			}
+
+			@Override
+			protected void entryRemoved(boolean evict, String key, Image oldValue, Image newValue) {
+				if (evict) {
+					evicted.put(key, new SoftReference<>(oldValue));
+				}
+			}
+		};
+	}
+
+	synchronized Image get(String name) {
+		Image image = images.get(name);
+		if (image != null) {
+			return image;
+		}
+		SoftReference<Image> ref = evicted.remove(name);
+		if (ref != null) {
+			image = ref.get();
+			if (image != null) {
+				images.put(name, image);
+				return image;
+			}
+		}
+		return null;
+	}
+
+	synchronized void put(String name, Image image) {
+		evicted.remove(name);
+		images.put(name, image);
+		// drop references already cleared by the GC
+		for (Iterator<SoftReference<Image>> it = evicted.values().iterator(); it.hasNext(); ) {
+			if (it.next().get() == null) {
+				it.remove();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		images.evictAll();
+		evicted.clear();
+	}
+}
@@ -23,6 +23,9 @@ import android.util.Log;
  * The base class for all events.
  */
 public abstract class Event implements Runnable {
+	/** Time the event was posted to the queue, in nanoseconds */
+	long postTime;
+
 	/**
 	 * Event handling.
 	 * This is where you need to perform the required actions.
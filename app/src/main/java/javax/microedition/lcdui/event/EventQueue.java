@@ -17,23 +17,54 @@
 
 package javax.microedition.lcdui.event;
 
-import javax.microedition.util.LinkedList;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The event queue. A really complicated thing.
+ * <p>
+ * Events are kept in a bounded lock-free ring, so posting from the UI thread
+ * never waits for the MIDlet callbacks. Every slot has a sequence number telling
+ * whether it is free for the producers or published for the consumer.
+ * When the ring is full, events go to a synchronized overflow list until it is
+ * drained, so the queue is unbounded and posting never blocks.
  */
 public class EventQueue implements Runnable {
+	private static final String TAG = EventQueue.class.getName();
+	static final int CAPACITY = 1024;
+	private static final int MASK = CAPACITY - 1;
+
 	private static boolean immediate;
 
-	private final LinkedList<Event> queue = new LinkedList<>();
-	private final Object waiter = new Object();
+	private final Event[] buffer = new Event[CAPACITY];
+	private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	/** Events posted while the ring was full, guarded by itself */
+	private final ArrayDeque<Event> overflow = new ArrayDeque<>();
+	private volatile int overflowSize;
+
 	private final Object interlock = new Object();
 	private final Object callbackLock = new Object();
 
-	private boolean enabled;
-	private Thread thread;
-	private boolean running;
-	private boolean continuerun;
+	private volatile boolean enabled;
+	private volatile boolean waiting;
+	private volatile Thread thread;
+
+	/** Updated by the event loop only */
+	private volatile long processedCount;
+	private volatile long totalLatency;
+	private volatile long maxLatency;
+
+	public EventQueue() {
+		for (int i = 0; i < CAPACITY; i++) {
+			sequences.set(i, i);
+		}
+	}
 
 	/**
 	 * Enable immediate processing mode.
@@ -76,62 +107,163 @@ public class EventQueue implements Runnable {
 			return;      // and nothing to do here
 		}
 
-		boolean empty;
+		if (isCoalesced(event)) {
+			// leave the previous event, recycle the new one.
+			event.recycle();
+			return;
+		}
 
-		synchronized (queue) {   // all operations with the queue must be synchronized (on itself)
-			empty = queue.isEmpty();
+		event.enterQueue();
+		event.postTime = System.nanoTime();
+		// once events overflow, the next ones must follow them to keep the order
+		if (overflowSize != 0 || !offer(event)) {
+			synchronized (overflow) {
+				if (overflow.isEmpty()) {
+					Log.w(TAG, "postEvent: queue is full, using the overflow list");
+				}
+				overflow.addLast(event);
+				overflowSize = overflow.size();
+			}
+		}
+
+		if (waiting) {
+			Thread consumer = thread;
+			if (consumer != null) {
+				LockSupport.unpark(consumer);
+			}
+		}
+	}
 
-			if (empty || event.placeableAfter(queue.getLast())) {
-				/*
-				 * If the queue itself is empty, then this already implies that either
-				 * exactly one event remains and it is now being processed,
-				 * or there is not a single event left at all.
-				 *
-				 * In both cases, a new event should be added to the queue,
-				 * regardless of event.placeableAfter() value.
-				 */
+	/**
+	 * Check if the event can be dropped, because the last event in the queue
+	 * already does the same thing.
+	 * <p>
+	 * If the queue is empty, then either exactly one event is now being processed,
+	 * or there is not a single event left at all. In both cases, a new event should
+	 * be added to the queue, regardless of event.placeableAfter() value.
+	 * The event is only dropped if the previous one has not left the queue yet,
+	 * so its processing will see everything done before this call.
+	 */
+	private boolean isCoalesced(Event event) {
+		if (overflowSize != 0) {
+			return false;
+		}
+		long t = tail.get();
+		if (t == head.get()) {
+			return false;
+		}
+		int index = (int) (t - 1) & MASK;
+		if (sequences.get(index) != t) {
+			// not published yet, or already taken by the consumer
+			return false;
+		}
+		Event last = buffer[index];
+		if (last == null || event.placeableAfter(last)) {
+			return false;
+		}
+		return sequences.get(index) == t && tail.get() == t;
+	}
 
-				queue.addLast(event);
-				event.enterQueue();
+	private boolean offer(Event event) {
+		long pos = tail.get();
+		while (true) {
+			int index = (int) pos & MASK;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					buffer[index] = event;
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false;
 			} else {
-				// it is more correct, but additional checks are required
-				// queue.setLast(event).recycle(); // remove the previous event and add the new one.
-				event.recycle(); // more reliable // leave the previous event, recycle the new one.
+				pos = tail.get();
 			}
 		}
+	}
 
-		if (empty) {
-			/*
-			 * on the other hand, if the queue was non-empty,
-			 * there is at least one more iteration for the events,
-			 * and this is not necessary
-			 */
-
-			synchronized (waiter) {
-				if (running) {
-					continuerun = true;
-				} else {
-					waiter.notifyAll();
+	private Event poll() {
+		long pos = head.get();
+		while (true) {
+			int index = (int) pos & MASK;
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					Event event = buffer[index];
+					buffer[index] = null;
+					sequences.set(index, pos + CAPACITY);
+					return event;
 				}
+				pos = head.get();
+			} else if (diff < 0) {
+				return pollOverflow();
+			} else {
+				pos = head.get();
 			}
 		}
 	}
 
+	/**
+	 * Takes an event from the overflow list, after the ring has been drained.
+	 */
+	private Event pollOverflow() {
+		if (overflowSize == 0) {
+			return null;
+		}
+		synchronized (overflow) {
+			Event event = overflow.pollFirst();
+			overflowSize = overflow.size();
+			return event;
+		}
+	}
+
 	/**
 	 * Check if there is anything in the queue.
 	 *
 	 * @return true, if the queue is empty
 	 */
 	public boolean isEmpty() {
-		return queue.isEmpty();
+		return head.get() == tail.get() && overflowSize == 0;
+	}
+
+	/**
+	 * @return the number of events waiting in the queue
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head.get()) + overflowSize;
+	}
+
+	/**
+	 * @return the number of events processed by the event loop
+	 */
+	public long getProcessedCount() {
+		return processedCount;
+	}
+
+	/**
+	 * @return the total time the processed events spent in the queue, in nanoseconds
+	 */
+	public long getTotalLatency() {
+		return totalLatency;
+	}
+
+	/**
+	 * @return the longest time an event spent in the queue, in nanoseconds
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
 	}
 
 	/**
 	 * Clear the queue.
 	 */
 	public void clear() {
-		synchronized (queue) {
-			queue.clear();
+		Event event;
+		while ((event = poll()) != null) {
+			event.leaveQueue();
+			event.recycle();
 		}
 	}
 
@@ -155,8 +287,9 @@ public class EventQueue implements Runnable {
 	public void stopProcessing() {
 		enabled = false;
 
-		synchronized (waiter) {
-			waiter.notifyAll();
+		Thread consumer = thread;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
 		}
 
 		synchronized (interlock) {
@@ -170,35 +303,27 @@ public class EventQueue implements Runnable {
 	@Override
 	public void run() {
 		synchronized (interlock) {
-			running = true;
-
 			while (enabled) {
-
-				Event event;
-				synchronized (queue) {
-					event = queue.removeFirst();
-				}
+				Event event = poll();
 
 				if (event != null) {
+					long latency = System.nanoTime() - event.postTime;
+					processedCount++;
+					totalLatency += latency;
+					if (latency > maxLatency) {
+						maxLatency = latency;
+					}
 					synchronized (callbackLock) {
 						event.run();
 					}
 				} else {
-					synchronized (waiter) {
-						if (continuerun) {
-							continuerun = false;
-						} else {
-							running = false;
-
-							try {
-								waiter.wait();
-							} catch (InterruptedException ie) {
-								ie.printStackTrace();
-							}
-
-							running = true;
-						}
+					// producers check the flag after publishing, so an event
+					// posted after the check below will wake us up
+					waiting = true;
+					if (isEmpty() && enabled) {
+						LockSupport.park(this);
 					}
+					waiting = false;
 				}
 			}
 		}
@@ -213,4 +338,4 @@ public class EventQueue implements Runnable {
 			paintEvent.process();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui.game;
+
+import java.util.WeakHashMap;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * One bit per pixel opacity mask of an image, used for pixel-level collision detection.
+ * <p>
+ * Masks of immutable images are built once and kept as long as the image is alive,
+ * together with the mirrored and transposed variants needed for the sprite transforms.
+ * Each mask row is stored as 32-pixel words, so the overlapping rows of two masks
+ * are compared a word at a time.
+ */
+final class CollisionMask {
+	/**
+	 * Bit mask for channel value in ARGB pixel.
+	 */
+	private static final int ALPHA_BITMASK = 0xff000000;
+
+	/**
+	 * Alpha channel value for full opacity.
+	 */
+	private static final int FULLY_OPAQUE_ALPHA = 0xff000000;
+
+	private static final int NORMAL = 0;
+	private static final int MIRRORED = 1;
+	private static final int TRANSPOSED = 2;
+	private static final int TRANSPOSED_MIRRORED = 3;
+
+	private static final WeakHashMap<Image, CollisionMask> cache = new WeakHashMap<>();
+
+	private final int width;
+	private final int height;
+	/** Number of words per row */
+	private final int stride;
+	private final int[] bits;
+
+	/** Variants of the mask, built on demand */
+	private final CollisionMask[] variants = new CollisionMask[4];
+
+	private CollisionMask(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.stride = (width + 31) >>> 5;
+		this.bits = new int[stride * height];
+		variants[NORMAL] = this;
+	}
+
+	/**
+	 * Checks if two image regions have a pair of fully opaque pixels in the same place,
+	 * once the transforms are applied.
+	 *
+	 * @param image1XOffset left of the region in the first image, before the transform
+	 * @param image1YOffset top of the region in the first image, before the transform
+	 * @param width         width of the overlapping area on the screen
+	 * @param height        height of the overlapping area on the screen
+	 */
+	static boolean collides(int image1XOffset, int image1YOffset,
+							int image2XOffset, int image2YOffset,
+							Image image1, int transform1,
+							Image image2, int transform2,
+							int width, int height) {
+		CollisionMask base1 = getBase(image1, image1XOffset, image1YOffset, transform1, width, height);
+		if (image1.isMutable()) {
+			// the mask covers only the compared region
+			image1XOffset = image1YOffset = 0;
+		}
+		CollisionMask base2 = getBase(image2, image2XOffset, image2YOffset, transform2, width, height);
+		if (image2.isMutable()) {
+			image2XOffset = image2YOffset = 0;
+		}
+		CollisionMask mask1 = base1.getVariant(transform1);
+		CollisionMask mask2 = base2.getVariant(transform2);
+		int x1 = getMaskX(base1, image1XOffset, image1YOffset, transform1, width);
+		int x2 = getMaskX(base2, image2XOffset, image2YOffset, transform2, width);
+		int y1 = getMaskY(image1XOffset, image1YOffset, transform1, height);
+		int y2 = getMaskY(image2XOffset, image2YOffset, transform2, height);
+		int yIncr1 = getRowStep(transform1);
+		int yIncr2 = getRowStep(transform2);
+
+		int lastBits = width & 31;
+		int lastMask = lastBits == 0 ? -1 : (1 << lastBits) - 1;
+		for (int row = 0; row < height; row++, y1 += yIncr1, y2 += yIncr2) {
+			for (int col = 0; col < width; col += 32) {
+				int word = mask1.getWord(x1 + col, y1) & mask2.getWord(x2 + col, y2);
+				if (col + 32 > width) {
+					word &= lastMask;
+				}
+				if (word != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static CollisionMask getBase(Image image, int xOffset, int yOffset,
+										 int transform, int width, int height) {
+		if (image.isMutable()) {
+			// contents may change, build the mask of the compared region only
+			if ((transform & Sprite.INVERTED_AXES) != 0) {
+				return create(image, xOffset, yOffset, height, width);
+			}
+			return create(image, xOffset, yOffset, width, height);
+		}
+		synchronized (cache) {
+			CollisionMask mask = cache.get(image);
+			if (mask == null) {
+				mask = create(image, 0, 0, image.getWidth(), image.getHeight());
+				cache.put(image, mask);
+			}
+			return mask;
+		}
+	}
+
+	private static CollisionMask create(Image image, int x, int y, int width, int height) {
+		CollisionMask mask = new CollisionMask(width, height);
+		int[] argb = new int[width];
+		int[] bits = mask.bits;
+		for (int row = 0; row < height; row++) {
+			image.getRGB(argb, 0, width, x, y + row, width, 1);
+			int offset = row * mask.stride;
+			for (int col = 0; col < width; col++) {
+				if ((argb[col] & ALPHA_BITMASK) == FULLY_OPAQUE_ALPHA) {
+					bits[offset + (col >>> 5)] |= 1 << (col & 31);
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the mask variant in which screen columns of the transformed image
+	 * go along increasing mask columns.
+	 */
+	private CollisionMask getVariant(int transform) {
+		int variant;
+		if ((transform & Sprite.INVERTED_AXES) != 0) {
+			variant = (transform & Sprite.Y_FLIP) != 0 ? TRANSPOSED_MIRRORED : TRANSPOSED;
+		} else {
+			variant = (transform & Sprite.X_FLIP) != 0 ? MIRRORED : NORMAL;
+		}
+		synchronized (variants) {
+			CollisionMask mask = variants[variant];
+			if (mask == null) {
+				switch (variant) {
+					case MIRRORED:
+						mask = mirror();
+						break;
+					case TRANSPOSED:
+						mask = transpose();
+						break;
+					default:
+						mask = getVariant(Sprite.INVERTED_AXES).mirror();
+						break;
+				}
+				variants[variant] = mask;
+			}
+			return mask;
+		}
+	}
+
+	/**
+	 * Column of the variant mask matching the first screen column of the region.
+	 */
+	private static int getMaskX(CollisionMask base, int xOffset, int yOffset, int transform, int width) {
+		if ((transform & Sprite.INVERTED_AXES) != 0) {
+			// screen columns go along the image rows
+			return (transform & Sprite.Y_FLIP) != 0 ? base.height - yOffset - width : yOffset;
+		}
+		return (transform & Sprite.X_FLIP) != 0 ? base.width - xOffset - width : xOffset;
+	}
+
+	/**
+	 * Row of the variant mask matching the first screen row of the region.
+	 */
+	private static int getMaskY(int xOffset, int yOffset, int transform, int height) {
+		if ((transform & Sprite.INVERTED_AXES) != 0) {
+			// screen rows go along the image columns
+			return (transform & Sprite.X_FLIP) != 0 ? xOffset + height - 1 : xOffset;
+		}
+		return (transform & Sprite.Y_FLIP) != 0 ? yOffset + height - 1 : yOffset;
+	}
+
+	private static int getRowStep(int transform) {
+		int flip = (transform & Sprite.INVERTED_AXES) != 0 ? Sprite.X_FLIP : Sprite.Y_FLIP;
+		return (transform & flip) != 0 ? -1 : 1;
+	}
+
+	/**
+	 * Returns 32 pixels of the row starting at the given column, the first one in the lowest bit.
+	 */
+	private int getWord(int x, int y) {
+		int index = x >>> 5;
+		int shift = x & 31;
+		int offset = y * stride;
+		int word = bits[offset + index] >>> shift;
+		if (shift != 0 && index + 1 < stride) {
+			word |= bits[offset + index + 1] << (32 - shift);
+		}
+		return word;
+	}
+
+	private boolean get(int x, int y) {
+		return (bits[y * stride + (x >>> 5)] & (1 << (x & 31))) != 0;
+	}
+
+	private CollisionMask mirror() {
+		CollisionMask mask = new CollisionMask(width, height);
+		for (int y = 0; y < height; y++) {
+			int offset = y * mask.stride;
+			for (int x = 0; x < width; x++) {
+				if (get(width - 1 - x, y)) {
+					mask.bits[offset + (x >>> 5)] |= 1 << (x & 31);
+				}
+			}
+		}
+		return mask;
+	}
+
+	private CollisionMask transpose() {
+		CollisionMask mask = new CollisionMask(height, width);
+		for (int y = 0; y < width; y++) {
+			int offset = y * mask.stride;
+			for (int x = 0; x < height; x++) {
+				if (get(y, x)) {
+					mask.bits[offset + (x >>> 5)] |= 1 << (x & 31);
+				}
+			}
+		}
+		return mask;
+	}
+}
@@ -36,29 +36,19 @@ public class Sprite extends Layer {
 	 * If this bit is set, it denotes that the transform causes the
 	 * axes to be interchanged
 	 */
-	private static final int INVERTED_AXES = 0x4;
+	static final int INVERTED_AXES = 0x4;
 
 	/**
 	 * If this bit is set, it denotes that the transform causes the
 	 * x axis to be flipped.
 	 */
-	private static final int X_FLIP = 0x2;
+	static final int X_FLIP = 0x2;
 
 	/**
 	 * If this bit is set, it denotes that the transform causes the
 	 * y axis to be flipped.
 	 */
-	private static final int Y_FLIP = 0x1;
-
-	/**
-	 * Bit mask for channel value in ARGB pixel.
-	 */
-	private static final int ALPHA_BITMASK = 0xff000000;
-
-	/**
-	 * Alpha channel value for full opacity.
-	 */
-	private static final int FULLY_OPAQUE_ALPHA = 0xff000000;
+	static final int Y_FLIP = 0x1;
 
 	Image sourceImage;
 
@@ -892,142 +882,11 @@ public class Sprite extends Layer {
 											Image image1, int transform1,
 											Image image2, int transform2,
 											int width, int height) {
-
-		// starting point of comparison
-		int startY1;
-		// x and y increments
-		int xIncr1, yIncr1;
-
-		// .. for image 2
-		int startY2;
-		int xIncr2, yIncr2;
-
-		int numPixels = height * width;
-
-		int[] argbData1 = new int[numPixels];
-		int[] argbData2 = new int[numPixels];
-
-		if (0x0 != (transform1 & INVERTED_AXES)) {
-
-			if (0x0 != (transform1 & Y_FLIP)) {
-				xIncr1 = -(height); // - scanlength
-
-				startY1 = numPixels - height; // numPixels - scanlength
-			} else {
-				xIncr1 = height; // + scanlength
-
-				startY1 = 0;
-			}
-
-			if (0x0 != (transform1 & X_FLIP)) {
-				yIncr1 = -1;
-
-				startY1 += (height - 1);
-			} else {
-				yIncr1 = +1;
-			}
-
-			image1.getRGB(argbData1, 0, height, // scanlength = height
-					image1XOffset, image1YOffset, height, width);
-
-		} else {
-
-			if (0x0 != (transform1 & Y_FLIP)) {
-
-				startY1 = numPixels - width; // numPixels - scanlength
-
-				yIncr1 = -(width); // - scanlength
-			} else {
-				startY1 = 0;
-
-				yIncr1 = width; // + scanlength
-			}
-
-			if (0x0 != (transform1 & X_FLIP)) {
-				xIncr1 = -1;
-
-				startY1 += (width - 1);
-			} else {
-				xIncr1 = +1;
-			}
-
-			image1.getRGB(argbData1, 0, width, image1XOffset, image1YOffset, width, height);
-		}
-
-		if (0x0 != (transform2 & INVERTED_AXES)) {
-			// inverted axes
-
-			if (0x0 != (transform2 & Y_FLIP)) {
-				xIncr2 = -(height);
-
-				startY2 = numPixels - height;
-			} else {
-				xIncr2 = height;
-
-				startY2 = 0;
-			}
-
-			if (0x0 != (transform2 & X_FLIP)) {
-				yIncr2 = -1;
-
-				startY2 += height - 1;
-			} else {
-				yIncr2 = +1;
-			}
-
-			image2.getRGB(argbData2, 0, height,
-					image2XOffset, image2YOffset, height, width);
-
-		} else {
-
-			if (0x0 != (transform2 & Y_FLIP)) {
-				startY2 = numPixels - width;
-
-				yIncr2 = -(width);
-			} else {
-				startY2 = 0;
-
-				yIncr2 = +width;
-			}
-
-			if (0x0 != (transform2 & X_FLIP)) {
-				xIncr2 = -1;
-
-				startY2 += (width - 1);
-			} else {
-				xIncr2 = +1;
-			}
-
-			image2.getRGB(argbData2, 0, width, image2XOffset, image2YOffset, width, height);
-		}
-
-		int x1, x2;
-		int xLocalBegin1, xLocalBegin2;
-
-		// the loop counters
-		int numIterRows;
-		int numIterColumns;
-
-		for (numIterRows = 0, xLocalBegin1 = startY1, xLocalBegin2 = startY2;
-			 numIterRows < height;
-			 xLocalBegin1 += yIncr1, xLocalBegin2 += yIncr2, numIterRows++) {
-
-			for (numIterColumns = 0, x1 = xLocalBegin1, x2 = xLocalBegin2;
-				 numIterColumns < width;
-				 x1 += xIncr1, x2 += xIncr2, numIterColumns++) {
-
-				if (((argbData1[x1] & ALPHA_BITMASK) == FULLY_OPAQUE_ALPHA) &&
-						((argbData2[x2] & ALPHA_BITMASK) == FULLY_OPAQUE_ALPHA)) {
-
-					return true;
-				}
-
-			} // end for x
-
-		} // end for y
-
-		// worst case!  couldn't find a single colliding pixel!
-		return false;
+		return CollisionMask.collides(image1XOffset, image1YOffset,
+				image2XOffset, image2YOffset,
+				image1, transform1,
+				image2, transform2,
+				width, height);
 	}
 
 	private int getImageTopLeftX(int x1, int y1, int x2, int y2) {
@@ -16,10 +16,32 @@
 
 package javax.microedition.lcdui.game;
 
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+
 import javax.microedition.lcdui.Graphics;
 import javax.microedition.lcdui.Image;
 
 public class TiledLayer extends Layer {
+	/**
+	 * Approximate size of the cached chunks, in pixels
+	 */
+	private static final int CHUNK_SIZE = 128;
+
+	/**
+	 * Size limit of the chunk cache of a layer, in bytes
+	 */
+	private static final int CHUNK_CACHE_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * If set, cells are pre-rendered into cached chunks, which are drawn
+	 * instead of separate tiles
+	 */
+	private static final boolean useChunkCache = Boolean.getBoolean("tiledlayer.chunk-cache");
+
 	private int cellHeight;
 	private int cellWidth;
 	private int rows;
@@ -33,6 +55,15 @@ public class TiledLayer extends Layer {
 	private int[] anim_to_static;
 	private int numOfAnimTiles;
 
+	private LruCache<Integer, Chunk> chunks;
+	/** Chunks held by the cache, to walk them without copying the cache */
+	private final ArrayList<Chunk> cachedChunks = new ArrayList<>();
+	private int chunkColumns;
+	private int chunkRows;
+	private int chunksPerRow;
+	/** Transparent pixels of one cell, used to clear the cell in a chunk */
+	private int[] emptyCell;
+
 	public TiledLayer(int columns, int rows, Image image, int tileWidth,
 					  int tileHeight) {
 		super(columns < 1 || tileWidth < 1 ? -1 : columns * tileWidth,
@@ -84,8 +115,15 @@ public class TiledLayer extends Layer {
 			throw new IndexOutOfBoundsException();
 		}
 
+		if (anim_to_static[animatedTileIndex] == staticTileIndex) {
+			return;
+		}
 		anim_to_static[animatedTileIndex] = staticTileIndex;
-
+		if (chunks != null) {
+			for (Chunk chunk : cachedChunks) {
+				chunk.invalidateTile(-animatedTileIndex);
+			}
+		}
 	}
 
 	public int getAnimatedTile(int animatedTileIndex) {
@@ -116,8 +154,10 @@ public class TiledLayer extends Layer {
 			}
 		}
 
-		cellMatrix[row][col] = tileIndex;
-
+		if (cellMatrix[row][col] != tileIndex) {
+			cellMatrix[row][col] = tileIndex;
+			invalidateCells(col, row, 1, 1);
+		}
 	}
 
 	public int getCell(int col, int row) {
@@ -156,6 +196,7 @@ public class TiledLayer extends Layer {
 				cellMatrix[rowCount][columnCount] = tileIndex;
 			}
 		}
+		invalidateCells(col, row, numCols, numRows);
 	}
 
 	public final int getCellWidth() {
@@ -205,7 +246,9 @@ public class TiledLayer extends Layer {
 			throw new NullPointerException();
 		}
 
-		if (visible) {
+		if (visible && chunks != null && !sourceImage.isMutable()) {
+			paintChunks(g);
+		} else if (visible) {
 			int startColumn = 0;
 			int endColumn = this.columns;
 			int startRow = 0;
@@ -312,5 +355,195 @@ public class TiledLayer extends Layer {
 				currentTile++;
 			}
 		}
+
+		if (useChunkCache) {
+			initChunks();
+		}
+	}
+
+	private void initChunks() {
+		chunkColumns = Math.max(1, CHUNK_SIZE / cellWidth);
+		chunkRows = Math.max(1, CHUNK_SIZE / cellHeight);
+		chunksPerRow = (columns + chunkColumns - 1) / chunkColumns;
+		emptyCell = null;
+		if (chunks == null) {
+			chunks = new LruCache<Integer, Chunk>(CHUNK_CACHE_SIZE) {
+				@Override
+				protected int sizeOf(Integer key, Chunk value) {
+					return value.byteCount;
+				}
+
+				@Override
+				protected void entryRemoved(boolean evicted, Integer key, Chunk oldValue, Chunk newValue) {
+					cachedChunks.remove(oldValue);
+				}
+			};
+		} else {
+			chunks.evictAll();
+		}
+	}
+
+	/**
+	 * Marks the cells as outdated in the cached chunks covering them
+	 */
+	private void invalidateCells(int col, int row, int numCols, int numRows) {
+		if (chunks == null || numCols == 0 || numRows == 0) {
+			return;
+		}
+		int endChunkX = (col + numCols - 1) / chunkColumns;
+		int endChunkY = (row + numRows - 1) / chunkRows;
+		for (int cy = row / chunkRows; cy <= endChunkY; cy++) {
+			for (int cx = col / chunkColumns; cx <= endChunkX; cx++) {
+				Chunk chunk = chunks.get(cy * chunksPerRow + cx);
+				if (chunk != null) {
+					chunk.invalidateCells(col, row, col + numCols, row + numRows);
+				}
+			}
+		}
+	}
+
+	private void paintChunks(Graphics g) {
+		int chunkWidth = chunkColumns * cellWidth;
+		int chunkHeight = chunkRows * cellHeight;
+		int clipX = g.getClipX() - this.x;
+		int clipY = g.getClipY() - this.y;
+		int startX = Math.max(0, clipX / chunkWidth);
+		int startY = Math.max(0, clipY / chunkHeight);
+		int endX = Math.min(chunksPerRow, (clipX + g.getClipWidth() + chunkWidth - 1) / chunkWidth);
+		int endY = Math.min((rows + chunkRows - 1) / chunkRows,
+				(clipY + g.getClipHeight() + chunkHeight - 1) / chunkHeight);
+		for (int cy = startY; cy < endY; cy++) {
+			for (int cx = startX; cx < endX; cx++) {
+				int key = cy * chunksPerRow + cx;
+				Chunk chunk = chunks.get(key);
+				if (chunk == null) {
+					chunk = new Chunk(cx * chunkColumns, cy * chunkRows);
+					chunks.put(key, chunk);
+					cachedChunks.add(chunk);
+				}
+				if (chunk.dirty) {
+					chunk.render();
+				}
+				if (!chunk.empty) {
+					g.drawImage(chunk.image, this.x + cx * chunkWidth, this.y + cy * chunkHeight,
+							Graphics.TOP | Graphics.LEFT);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pre-rendered block of cells
+	 */
+	private class Chunk {
+		final int column;
+		final int row;
+		final int numCols;
+		final int numRows;
+		/** Size of the pixels of the chunk */
+		final int byteCount;
+		/**
+		 * Rendered cells, created with the first visible cell and then updated in place.
+		 * Being mutable, it is drawn into the image even when a frame is recorded.
+		 */
+		Image image;
+		/** Outdated cells, row by row */
+		final boolean[] dirtyCells;
+		boolean dirty = true;
+		boolean empty;
+
+		Chunk(int column, int row) {
+			this.column = column;
+			this.row = row;
+			numCols = Math.min(chunkColumns, columns - column);
+			numRows = Math.min(chunkRows, rows - row);
+			byteCount = numCols * cellWidth * numRows * cellHeight * 4;
+			dirtyCells = new boolean[numCols * numRows];
+		}
+
+		void render() {
+			dirty = false;
+			empty = isEmpty();
+			if (empty) {
+				// the cleared cells stay outdated until the chunk is drawn again
+				return;
+			}
+			boolean all = image == null;
+			if (all) {
+				image = Image.createImage(numCols * cellWidth, numRows * cellHeight, Color.TRANSPARENT);
+			} else if (emptyCell == null) {
+				emptyCell = new int[cellWidth * cellHeight];
+			}
+			Bitmap bitmap = image.getBitmap();
+			Graphics g = image.getSingleGraphics();
+			for (int r = 0; r < numRows; r++) {
+				int[] cells = cellMatrix[row + r];
+				for (int c = 0; c < numCols; c++) {
+					if (!all && !dirtyCells[r * numCols + c]) {
+						continue;
+					}
+					dirtyCells[r * numCols + c] = false;
+					int x = c * cellWidth;
+					int y = r * cellHeight;
+					if (!all) {
+						bitmap.setPixels(emptyCell, 0, cellWidth, x, y, cellWidth, cellHeight);
+					}
+					int tileIndex = cells[column + c];
+					if (tileIndex == 0) { // transparent tile
+						continue;
+					} else if (tileIndex < 0) {
+						tileIndex = getAnimatedTile(tileIndex);
+					}
+					g.drawRegion(sourceImage,
+							tileSetX[tileIndex],
+							tileSetY[tileIndex],
+							cellWidth, cellHeight,
+							Sprite.TRANS_NONE,
+							x, y,
+							Graphics.TOP | Graphics.LEFT);
+				}
+			}
+		}
+
+		private boolean isEmpty() {
+			for (int r = 0; r < numRows; r++) {
+				int[] cells = cellMatrix[row + r];
+				for (int c = 0; c < numCols; c++) {
+					if (cells[column + c] != 0) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Marks the cells of the chunk within the bounds as outdated
+		 */
+		void invalidateCells(int startCol, int startRow, int endCol, int endRow) {
+			int endC = Math.min(numCols, endCol - column);
+			int endR = Math.min(numRows, endRow - row);
+			for (int r = Math.max(0, startRow - row); r < endR; r++) {
+				for (int c = Math.max(0, startCol - column); c < endC; c++) {
+					dirtyCells[r * numCols + c] = true;
+					dirty = true;
+				}
+			}
+		}
+
+		/**
+		 * Marks the cells of the chunk containing the animated tile as outdated
+		 */
+		void invalidateTile(int tileIndex) {
+			for (int r = 0; r < numRows; r++) {
+				int[] cells = cellMatrix[row + r];
+				for (int c = 0; c < numCols; c++) {
+					if (cells[column + c] == tileIndex) {
+						dirtyCells[r * numCols + c] = true;
+						dirty = true;
+					}
+				}
+			}
+		}
 	}
 }
@@ -4,6 +4,7 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.PorterDuff;
 import android.graphics.RectF;
 import android.graphics.Typeface;
@@ -78,6 +79,14 @@ public class CanvasWrapper {
 		canvas.drawBitmap(bitmap, image.getBounds(), dst, imgPaint);
 	}
 
+	public void drawPicture(Picture picture, RectF dst) {
+		canvas.save();
+		canvas.translate(dst.left, dst.top);
+		canvas.scale(dst.width() / picture.getWidth(), dst.height() / picture.getHeight());
+		canvas.drawPicture(picture);
+		canvas.restore();
+	}
+
 	public void fillRect(RectF rect) {
 		canvas.drawRect(rect, fillPaint);
 	}
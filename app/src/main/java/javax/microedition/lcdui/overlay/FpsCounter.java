@@ -17,6 +17,7 @@ package javax.microedition.lcdui.overlay;
 
 import android.view.View;
 
+import java.util.Locale;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -27,6 +28,7 @@ public class FpsCounter extends TimerTask implements Layer {
 	private final View view;
 	private String prevFrameCount = "0";
 	private int totalFrameCount;
+	private volatile long jitter = -1;
 	private final Timer timer;
 
 	public FpsCounter(View view) {
@@ -36,7 +38,12 @@ public class FpsCounter extends TimerTask implements Layer {
 	}
 
 	public void run() {
-		prevFrameCount = String.valueOf(totalFrameCount);
+		long jitter = this.jitter;
+		if (jitter >= 0) {
+			prevFrameCount = String.format(Locale.US, "%d ±%.1fms", totalFrameCount, jitter / 1e6f);
+		} else {
+			prevFrameCount = String.valueOf(totalFrameCount);
+		}
 		totalFrameCount = 0;
 		view.postInvalidate();
 	}
@@ -45,6 +52,13 @@ public class FpsCounter extends TimerTask implements Layer {
 		totalFrameCount++;
 	}
 
+	/**
+	 * @param jitter deviation of the frame intervals from the frame rate limit, in nanoseconds
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
 	public void paint(CanvasWrapper g) {
 		g.setFillColor(0x90000000);
 		g.setTextColor(0xFF00FF00);
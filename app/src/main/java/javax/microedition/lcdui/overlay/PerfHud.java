@@ -0,0 +1,241 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui.overlay;
+
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Debug;
+import android.view.View;
+
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.microedition.lcdui.event.EventQueue;
+import javax.microedition.lcdui.graphics.CanvasWrapper;
+
+/**
+ * Performance overlay with a rolling graph of the recent frame times.
+ * <p>
+ * Every bar is split into the time spent in the MIDlet paint(), in copying the
+ * offscreen buffer and in posting the frame to the screen, the rest of the frame
+ * interval is shown in gray. The text line shows the averages over the last update
+ * period, the event queue depth and the mean time events wait in it, and the GC count
+ * and allocated bytes per frame.
+ */
+public class PerfHud extends TimerTask implements Layer {
+	private static final int FRAMES = 120;
+	private static final long UPDATE_PERIOD = 250;
+	/** Frame time at the top of the graph, in nanoseconds */
+	private static final float GRAPH_RANGE = 50_000_000f;
+	private static final float FRAME_60HZ = 16_666_667f;
+
+	private static final int COLOR_BACKGROUND = 0x90000000;
+	private static final int COLOR_PAINT = 0xFF4CAF50;
+	private static final int COLOR_COPY = 0xFFFFC107;
+	private static final int COLOR_POST = 0xFF2196F3;
+	private static final int COLOR_OTHER = 0xFF757575;
+	private static final int COLOR_LINE = 0xFFF44336;
+
+	private final View view;
+	private final Timer timer;
+	private final RectF rect = new RectF();
+
+	private final long[] paintTimes = new long[FRAMES];
+	private final long[] copyTimes = new long[FRAMES];
+	private final long[] postTimes = new long[FRAMES];
+	private final long[] frameTimes = new long[FRAMES];
+	private int frameIndex;
+	private long lastFrame;
+
+	private long paintTime;
+	private long copyTime;
+	private long postTime;
+
+	private int periodFrames;
+	private int maxQueueDepth;
+	private EventQueue queue;
+	private long lastProcessed;
+	private long lastLatency;
+	private long lastGcCount = -1;
+	private long lastAllocated = -1;
+	private volatile String summary = "";
+
+	public PerfHud(View view) {
+		this.view = view;
+		timer = new Timer("PerfHud", true);
+		timer.scheduleAtFixedRate(this, 0, UPDATE_PERIOD);
+	}
+
+	public synchronized void addPaintTime(long nanos) {
+		paintTime += nanos;
+	}
+
+	public synchronized void addCopyTime(long nanos) {
+		copyTime += nanos;
+	}
+
+	public synchronized void addPostTime(long nanos) {
+		postTime += nanos;
+	}
+
+	/**
+	 * Closes the current frame after it has been posted to the screen.
+	 *
+	 * @param queue the event queue, its depth and latency are shown
+	 */
+	public synchronized void frameShown(EventQueue queue) {
+		this.queue = queue;
+		int queueDepth = queue.size();
+		long now = System.nanoTime();
+		int i = frameIndex;
+		paintTimes[i] = paintTime;
+		copyTimes[i] = copyTime;
+		postTimes[i] = postTime;
+		frameTimes[i] = lastFrame == 0 ? 0 : now - lastFrame;
+		frameIndex = (i + 1) % FRAMES;
+		lastFrame = now;
+		paintTime = copyTime = postTime = 0;
+		periodFrames++;
+		if (queueDepth > maxQueueDepth) {
+			maxQueueDepth = queueDepth;
+		}
+	}
+
+	@Override
+	public void run() {
+		long gcCount = getGcCount();
+		long allocated = getAllocatedBytes();
+		String text;
+		synchronized (this) {
+			int frames = periodFrames;
+			long paint = 0, copy = 0, post = 0;
+			for (int n = 1; n <= frames && n <= FRAMES; n++) {
+				int i = (frameIndex - n + FRAMES) % FRAMES;
+				paint += paintTimes[i];
+				copy += copyTimes[i];
+				post += postTimes[i];
+			}
+			int count = Math.max(1, Math.min(frames, FRAMES));
+			long gc = lastGcCount < 0 || gcCount < 0 ? 0 : gcCount - lastGcCount;
+			long alloc = lastAllocated < 0 ? 0 : Math.max(0, allocated - lastAllocated);
+			long latency = 0;
+			if (queue != null) {
+				long processed = queue.getProcessedCount();
+				long totalLatency = queue.getTotalLatency();
+				if (processed > lastProcessed) {
+					latency = (totalLatency - lastLatency) / (processed - lastProcessed);
+				}
+				lastProcessed = processed;
+				lastLatency = totalLatency;
+			}
+			text = String.format(Locale.US,
+					"paint %.1f copy %.1f post %.1f ms | queue %d, %.1f ms | gc %d | %d KB/frame",
+					paint / count / 1e6f, copy / count / 1e6f, post / count / 1e6f,
+					maxQueueDepth, latency / 1e6f, gc, alloc / Math.max(1, frames) / 1024);
+			periodFrames = 0;
+			maxQueueDepth = 0;
+		}
+		lastGcCount = gcCount;
+		lastAllocated = allocated;
+		summary = text;
+		view.postInvalidate();
+	}
+
+	@Override
+	public synchronized void paint(CanvasWrapper g) {
+		float textHeight = g.getTextHeight();
+		float barWidth = Math.max(1, Math.round(textHeight / 8));
+		float top = textHeight;
+		float graphHeight = textHeight * 3;
+		float bottom = top + graphHeight;
+		float scale = graphHeight / GRAPH_RANGE;
+
+		g.setFillColor(COLOR_BACKGROUND);
+		rect.set(0, top, barWidth * FRAMES, bottom + textHeight);
+		g.fillRect(rect);
+
+		for (int n = 0; n < FRAMES; n++) {
+			int i = (frameIndex + n) % FRAMES;
+			float left = n * barWidth;
+			float right = left + barWidth - (barWidth > 2 ? 1 : 0);
+			float y = bottom;
+			y = drawSegment(g, left, right, y, paintTimes[i] * scale, COLOR_PAINT, top);
+			y = drawSegment(g, left, right, y, copyTimes[i] * scale, COLOR_COPY, top);
+			y = drawSegment(g, left, right, y, postTimes[i] * scale, COLOR_POST, top);
+			long other = frameTimes[i] - paintTimes[i] - copyTimes[i] - postTimes[i];
+			if (other > 0) {
+				drawSegment(g, left, right, y, other * scale, COLOR_OTHER, top);
+			}
+		}
+
+		g.setFillColor(COLOR_LINE);
+		float line = bottom - FRAME_60HZ * scale;
+		rect.set(0, line, barWidth * FRAMES, line + 1);
+		g.fillRect(rect);
+
+		g.setTextColor(0xFFFFFFFF);
+		g.setTextAlign(Paint.Align.LEFT);
+		g.drawString(summary, 0, bottom + textHeight / 2);
+		g.setTextAlign(Paint.Align.CENTER);
+	}
+
+	/**
+	 * Draws a part of the frame bar above the given position, clipped to the graph top.
+	 *
+	 * @return top of the drawn part
+	 */
+	private float drawSegment(CanvasWrapper g, float left, float right, float y,
+							  float height, int color, float graphTop) {
+		if (height <= 0 || y <= graphTop) {
+			return y;
+		}
+		float top = Math.max(y - height, graphTop);
+		g.setFillColor(color);
+		rect.set(left, top, right, y);
+		g.fillRect(rect);
+		return top;
+	}
+
+	public void stop() {
+		timer.cancel();
+	}
+
+	private static long getGcCount() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			try {
+				return Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count"));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private static long getAllocatedBytes() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			try {
+				return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+			} catch (NumberFormatException e) {
+				// fall through
+			}
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
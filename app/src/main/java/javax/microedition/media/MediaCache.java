@@ -0,0 +1,288 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import com.arthenica.mobileffmpeg.Config;
+import com.arthenica.mobileffmpeg.FFmpeg;
+import com.arthenica.mobileffmpeg.FFprobe;
+import com.arthenica.mobileffmpeg.MediaInformation;
+import com.arthenica.mobileffmpeg.StreamInformation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.microedition.util.ContextHolder;
+
+/**
+ * Content-addressed cache of the media files played from streams.
+ * <p>
+ * Files are keyed by SHA-256 of the MIME type and the data, and are stored already
+ * probed and, for ADPCM, converted to PCM. Streams are written to a temporary file
+ * while hashing, so the data is never held in memory as a whole. Players created
+ * again for the same data reuse the file. Files in use are reference counted, the
+ * least recently used unreferenced files are deleted when the cache grows over
+ * {@link #SIZE_LIMIT}.
+ */
+class MediaCache {
+	private static final String TAG = MediaCache.class.getName();
+	private static final String CONVERTED_EXTENSION = ".wav";
+	private static final String TEMP_PREFIX = "tmp-";
+	private static final long SIZE_LIMIT = 32 * 1024 * 1024;
+	//noinspection CharsetObjectCanBeUsed
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static MediaCache instance;
+
+	private final File dir;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size;
+
+	static synchronized MediaCache getInstance() {
+		if (instance == null) {
+			instance = new MediaCache(new File(ContextHolder.getCacheDir(), "media"));
+		}
+		return instance;
+	}
+
+	private MediaCache(File dir) {
+		this.dir = dir;
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for (File file : files) {
+			String name = file.getName();
+			int dot = name.indexOf('.');
+			if (name.startsWith(TEMP_PREFIX) || dot <= 0) {
+				// left by an interrupted conversion
+				//noinspection ResultOfMethodCallIgnored
+				file.delete();
+				continue;
+			}
+			Entry entry = new Entry(name.substring(0, dot));
+			entry.file = file;
+			entry.length = file.length();
+			entries.put(entry.key, entry);
+			size += entry.length;
+		}
+	}
+
+	/**
+	 * Returns the entry of a file with the content of the stream, creating the file if needed.
+	 * The stream is read to the end but not closed. The entry must be released with
+	 * {@link #release(Entry)}.
+	 */
+	Entry acquire(InputStream stream, String type) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create directory: [" + dir + ']');
+		}
+		String extension = "." + MimeTypeMap.getSingleton().getExtensionFromMimeType(type);
+		File temp = File.createTempFile(TEMP_PREFIX, extension, dir);
+		String key;
+		try {
+			key = write(stream, temp, type);
+		} catch (IOException e) {
+			//noinspection ResultOfMethodCallIgnored
+			temp.delete();
+			throw e;
+		}
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			entry.refs++;
+		}
+		synchronized (entry) {
+			if (entry.file == null || !entry.file.isFile()) {
+				File file;
+				try {
+					file = create(key, temp, extension);
+				} catch (IOException e) {
+					release(entry);
+					throw e;
+				}
+				long length = file.length();
+				synchronized (this) {
+					// the previous file may have been deleted behind our back
+					size += length - entry.length;
+					entry.file = file;
+					entry.length = length;
+				}
+				trim();
+			} else {
+				//noinspection ResultOfMethodCallIgnored
+				temp.delete();
+				Log.d(TAG, "acquire: reused " + entry.file.getName());
+				//noinspection ResultOfMethodCallIgnored
+				entry.file.setLastModified(System.currentTimeMillis());
+			}
+		}
+		return entry;
+	}
+
+	synchronized void release(Entry entry) {
+		if (entry.refs > 0) {
+			entry.refs--;
+		}
+		if (entry.refs == 0 && entry.file == null) {
+			entries.remove(entry.key);
+		}
+	}
+
+	/**
+	 * Copies the stream into the file.
+	 *
+	 * @return the key of the content
+	 */
+	private static String write(InputStream stream, File file, String type) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update(String.valueOf(type).getBytes(UTF_8));
+		digest.update((byte) 0);
+		byte[] buf = new byte[0x10000];
+		try (OutputStream os = new FileOutputStream(file)) {
+			while (true) {
+				int read;
+				try {
+					read = stream.read(buf);
+				} catch (IOException e) {
+					// play what has been received
+					Log.d(TAG, "Media pipe failure: " + e.toString());
+					break;
+				}
+				if (read < 0) {
+					break;
+				}
+				os.write(buf, 0, read);
+				digest.update(buf, 0, read);
+			}
+		}
+		return String.format("%064x", new BigInteger(1, digest.digest()));
+	}
+
+	/**
+	 * Converts the written file if needed and moves it to its place in the cache.
+	 */
+	private File create(String key, File temp, String extension) throws IOException {
+		File converted = null;
+		try {
+			converted = convert(temp);
+		} catch (Throwable e) {
+			// Thrown on fake Oppo devices
+			e.printStackTrace();
+		}
+		File file;
+		if (converted != null) {
+			//noinspection ResultOfMethodCallIgnored
+			temp.delete();
+			file = new File(dir, key + CONVERTED_EXTENSION);
+			temp = converted;
+		} else {
+			file = new File(dir, key + extension);
+		}
+		if (!temp.renameTo(file)) {
+			//noinspection ResultOfMethodCallIgnored
+			temp.delete();
+			throw new IOException("Can't rename media file: " + file);
+		}
+		Log.d(TAG, "create: " + file.getName());
+		return file;
+	}
+
+	/**
+	 * Converts ADPCM to PCM, which is not supported by the platform player.
+	 *
+	 * @return the converted file, or null if no conversion was needed
+	 */
+	private static File convert(File mediaFile) {
+		MediaInformation mediaInformation = FFprobe.getMediaInformation(mediaFile.getPath());
+		if (mediaInformation != null) {
+			StreamInformation streamInformation = mediaInformation.getStreams().get(0);
+			if (streamInformation.getCodec().contains("adpcm")) {
+				String newName = mediaFile.getPath() + CONVERTED_EXTENSION;
+				String cmd = "-i " + mediaFile.getPath() + " -acodec pcm_u8 -ar 16000 " + newName;
+				int rc = FFmpeg.execute(cmd);
+				if (rc == Config.RETURN_CODE_SUCCESS) {
+					Log.i(TAG, "Command execution completed successfully.");
+					return new File(newName);
+				} else {
+					Log.i(TAG, String.format(
+							"Command execution failed with rc=%d and the output below.", rc));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the least recently used files not in use, until the cache fits into the size limit.
+	 */
+	private synchronized void trim() {
+		for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+			if (size <= SIZE_LIMIT) {
+				break;
+			}
+			Entry entry = it.next().getValue();
+			if (entry.refs > 0 || entry.file == null) {
+				continue;
+			}
+			if (entry.file.delete() || !entry.file.exists()) {
+				size -= entry.length;
+				it.remove();
+				Log.d(TAG, "trim: evicted " + entry.file.getName());
+			}
+		}
+	}
+
+	static final class Entry {
+		final String key;
+		File file;
+		/** Length of the file when it was added, counted in the cache size */
+		long length;
+		int refs;
+
+		Entry(String key) {
+			this.key = key;
+		}
+
+		File getFile() {
+			return file;
+		}
+	}
+}
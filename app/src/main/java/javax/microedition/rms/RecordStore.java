@@ -24,13 +24,14 @@
  */
 package javax.microedition.rms;
 
-import javax.microedition.rms.impl.AndroidRecordStoreManager;
+import javax.microedition.rms.impl.RecordStoreManager;
+import javax.microedition.rms.impl.RecordStores;
 
 public class RecordStore {
 	public static final int AUTHMODE_PRIVATE = 0;
 	public static final int AUTHMODE_ANY = 1;
 
-	private static final AndroidRecordStoreManager recordStoreManager = new AndroidRecordStoreManager();
+	private static final RecordStoreManager recordStoreManager = RecordStores.getManager();
 
 	public static void deleteRecordStore(String recordStoreName) throws RecordStoreException {
 		recordStoreManager.deleteRecordStore(recordStoreName);
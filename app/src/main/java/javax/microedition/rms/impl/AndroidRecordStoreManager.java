@@ -26,14 +26,24 @@
  */
 package javax.microedition.rms.impl;
 
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -49,15 +59,40 @@ import ru.playsoftware.j2meloader.util.FileUtils;
 public class AndroidRecordStoreManager implements RecordStoreManager {
 	private static final String TAG = "RecordStore";
 
-	private final static String RECORD_STORE_HEADER_SUFFIX = ".rsh";
+	final static String RECORD_STORE_HEADER_SUFFIX = ".rsh";
 
 	private final static String RECORD_STORE_RECORD_SUFFIX = ".rsr";
 
 	private final static Object NULL_STORE = new Object();
 
+	/** Delay before the postponed writes are flushed in the write-behind mode */
+	private static final long WRITE_BEHIND_DELAY = 500;
 
 	private Map<String, Object> recordStores = null;
 
+	/**
+	 * Write-behind mode: mutations are kept in memory and written to disk in batches
+	 * by a background thread. Enabled with the system property {@code rms.write-behind: true}.
+	 */
+	private final boolean writeBehind = Boolean.getBoolean("rms.write-behind");
+	private final Object flushLock = new Object();
+	private final Map<RecordStoreImpl, PendingWrites> pendingWrites = new HashMap<>();
+	/** Files written by the background flushes and not yet synced, guarded by the flush lock */
+	private final HashSet<String> unsyncedFiles = new HashSet<>();
+	private Handler writerHandler;
+	private boolean flushScheduled;
+	private final Runnable flushTask = () -> {
+		synchronized (this) {
+			flushScheduled = false;
+		}
+		flushPendingWrites(false);
+	};
+
+	private long coalescedWrites;
+	private long flushCount;
+	private long flushTimeTotal;
+	private long flushTimeMax;
+
 	@Override
 	public String getName() {
 		return "Android record store";
@@ -91,18 +126,7 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 			throw new RecordStoreException();
 		}
 
-		File dataDir = new File(AppClassLoader.getDataDir());
-		String prefix = recordStoreName + ".";
-		String[] files = dataDir.list();
-		if (files != null) {
-			for (String name : files) {
-				int dot = name.indexOf('.', prefix.length() + 1);
-				if ((dot == -1 || dot == name.lastIndexOf('.')) && name.startsWith(prefix)) {
-					//noinspection ResultOfMethodCallIgnored
-					new File(dataDir, name).delete();
-				}
-			}
-		}
+		deleteStoreFiles(recordStoreName);
 
 		recordStores.remove(recordStoreName);
 		Log.d(TAG, "RecordStore " + recordStoreName + " deleted");
@@ -142,6 +166,16 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 		}
 
 		recordStores.put(recordStoreName, recordStoreImpl);
+		loadRecords(recordStoreImpl, recordStoreName);
+
+		Log.d(TAG, "RecordStore " + recordStoreName + " opened");
+		return recordStoreImpl;
+	}
+
+	/**
+	 * Reads all records of the store from the legacy one-file-per-record layout.
+	 */
+	static void loadRecords(RecordStoreImpl recordStoreImpl, String recordStoreName) {
 		synchronized (recordStoreImpl.records) {
 			File dataDir = new File(AppClassLoader.getDataDir());
 			String prefix = recordStoreName + ".";
@@ -169,11 +203,25 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 					}
 				}
 			}
-
 		}
+	}
 
-		Log.d(TAG, "RecordStore " + recordStoreName + " opened");
-		return recordStoreImpl;
+	/**
+	 * Deletes the header and all record files of the store in the legacy layout.
+	 */
+	static void deleteStoreFiles(String recordStoreName) {
+		File dataDir = new File(AppClassLoader.getDataDir());
+		String prefix = recordStoreName + ".";
+		String[] files = dataDir.list();
+		if (files != null) {
+			for (String name : files) {
+				int dot = name.indexOf('.', prefix.length() + 1);
+				if ((dot == -1 || dot == name.lastIndexOf('.')) && name.startsWith(prefix)) {
+					//noinspection ResultOfMethodCallIgnored
+					new File(dataDir, name).delete();
+				}
+			}
+		}
 	}
 
 	@Override
@@ -192,6 +240,12 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	@Override
 	public void deleteRecord(RecordStoreImpl recordStoreImpl, int recordId)
 			throws RecordStoreException {
+		if (writeBehind) {
+			synchronized (this) {
+				getPendingWrites(recordStoreImpl).delete(recordId);
+			}
+			return;
+		}
 		deleteFromDisk(recordStoreImpl, recordId);
 	}
 
@@ -211,9 +265,202 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	@Override
 	public void saveRecord(RecordStoreImpl recordStoreImpl, int recordId)
 			throws RecordStoreException {
+		if (writeBehind) {
+			synchronized (this) {
+				getPendingWrites(recordStoreImpl).save(recordId);
+			}
+			return;
+		}
 		saveToDisk(recordStoreImpl, recordId);
 	}
 
+	@Override
+	public void flush() {
+		if (!writeBehind) {
+			return;
+		}
+		synchronized (this) {
+			if (writerHandler != null) {
+				writerHandler.removeCallbacks(flushTask);
+			}
+			flushScheduled = false;
+		}
+		flushPendingWrites(true);
+		synchronized (this) {
+			Log.d(TAG, "RecordStore write-behind: flushes=" + flushCount
+					+ ", coalesced writes=" + coalescedWrites
+					+ ", flush time avg=" + (flushCount == 0 ? 0 : flushTimeTotal / flushCount)
+					+ "ms, max=" + flushTimeMax + "ms");
+		}
+	}
+
+	public synchronized long getCoalescedWrites() {
+		return coalescedWrites;
+	}
+
+	public synchronized long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * @return the longest time spent on writing one batch, in milliseconds
+	 */
+	public synchronized long getMaxFlushTime() {
+		return flushTimeMax;
+	}
+
+	private PendingWrites getPendingWrites(RecordStoreImpl recordStoreImpl) {
+		PendingWrites writes = pendingWrites.get(recordStoreImpl);
+		if (writes == null) {
+			writes = new PendingWrites();
+			pendingWrites.put(recordStoreImpl, writes);
+		}
+		if (!flushScheduled) {
+			if (writerHandler == null) {
+				HandlerThread thread = new HandlerThread("RecordStoreWriter");
+				thread.start();
+				writerHandler = new Handler(thread.getLooper());
+			}
+			writerHandler.postDelayed(flushTask, WRITE_BEHIND_DELAY);
+			flushScheduled = true;
+		}
+		return writes;
+	}
+
+	/**
+	 * Writes out all postponed changes. Only the last state of each record is written,
+	 * and the store header is written once per batch.
+	 *
+	 * @param sync wait until the data, including the earlier batches, reaches the storage device
+	 */
+	private void flushPendingWrites(boolean sync) {
+		synchronized (flushLock) {
+			ArrayList<RecordStoreImpl> stores;
+			synchronized (this) {
+				stores = new ArrayList<>(pendingWrites.keySet());
+			}
+			if (!stores.isEmpty()) {
+				writeBatch(stores, sync);
+			}
+			if (sync) {
+				syncFiles();
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the flush lock held.
+	 */
+	private void writeBatch(ArrayList<RecordStoreImpl> stores, boolean sync) {
+		long start = SystemClock.elapsedRealtime();
+		for (RecordStoreImpl recordStore : stores) {
+			String storeName;
+			PendingWrites writes;
+			LinkedHashMap<String, byte[]> files = new LinkedHashMap<>();
+			// the MIDlet thread changes the records under this lock, take a consistent snapshot
+			synchronized (recordStore.records) {
+				synchronized (this) {
+					writes = pendingWrites.remove(recordStore);
+				}
+				if (writes == null) {
+					continue;
+				}
+				try {
+					storeName = recordStore.getName();
+				} catch (RecordStoreException e) {
+					Log.e(TAG, "RecordStore.flush: store is closed, " + writes.saved.size()
+							+ " records lost", e);
+					continue;
+				}
+				for (Integer recordId : writes.saved) {
+					if (!recordStore.records.containsKey(recordId)) {
+						// deleted after it was saved, the next batch deletes the file
+						continue;
+					}
+					byte[] data = serialize(recordStore, recordId);
+					if (data != null) {
+						files.put(getRecordFileName(storeName, recordId), data);
+					}
+				}
+				byte[] header = serialize(recordStore, -1);
+				if (header != null) {
+					files.put(getHeaderFileName(storeName), header);
+				}
+			}
+			for (Integer recordId : writes.deleted) {
+				String name = getRecordFileName(storeName, recordId);
+				ContextHolder.deleteFile(name);
+				unsyncedFiles.remove(name);
+			}
+			for (Map.Entry<String, byte[]> file : files.entrySet()) {
+				writeFile(file.getKey(), file.getValue(), sync);
+			}
+		}
+		long time = SystemClock.elapsedRealtime() - start;
+		synchronized (this) {
+			flushCount++;
+			flushTimeTotal += time;
+			if (time > flushTimeMax) {
+				flushTimeMax = time;
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the records of the store locked.
+	 *
+	 * @param recordId -1 for the header
+	 * @return the content of the file, null on error
+	 */
+	private static byte[] serialize(RecordStoreImpl recordStore, int recordId) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		try {
+			if (recordId == -1) {
+				recordStore.writeHeader(dos);
+			} else {
+				recordStore.writeRecord(dos, recordId);
+			}
+			dos.flush();
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.flush: ERROR serializing record " + recordId, e);
+			return null;
+		}
+		return baos.toByteArray();
+	}
+
+	private void writeFile(String name, byte[] data, boolean sync) {
+		try (FileOutputStream fos = ContextHolder.openFileOutput(name)) {
+			fos.write(data);
+			if (sync) {
+				fos.getFD().sync();
+				unsyncedFiles.remove(name);
+			} else {
+				unsyncedFiles.add(name);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.flush: ERROR writing object to " + name, e);
+		}
+	}
+
+	/**
+	 * Waits until the files written by the background flushes reach the storage device.
+	 */
+	private void syncFiles() {
+		for (String name : unsyncedFiles) {
+			File file = ContextHolder.getFileByName(name);
+			if (!file.exists()) {
+				continue;
+			}
+			try (FileOutputStream fos = new FileOutputStream(file, true)) {
+				fos.getFD().sync();
+			} catch (IOException e) {
+				Log.e(TAG, "RecordStore.flush: ERROR syncing " + name, e);
+			}
+		}
+		unsyncedFiles.clear();
+	}
+
 	private synchronized void deleteFromDisk(RecordStoreImpl recordStore, int recordId)
 			throws RecordStoreException {
 		String headerName = getHeaderFileName(recordStore.getName());
@@ -264,4 +511,23 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	private String getRecordFileName(String recordStoreName, int recordId) {
 		return recordStoreName + "." + recordId + RECORD_STORE_RECORD_SUFFIX;
 	}
+
+	private class PendingWrites {
+		final LinkedHashSet<Integer> saved = new LinkedHashSet<>();
+		final HashSet<Integer> deleted = new HashSet<>();
+
+		void save(int recordId) {
+			if (!saved.add(recordId)) {
+				coalescedWrites++;
+			}
+			deleted.remove(recordId);
+		}
+
+		void delete(int recordId) {
+			if (saved.remove(recordId)) {
+				coalescedWrites++;
+			}
+			deleted.add(recordId);
+		}
+	}
 }
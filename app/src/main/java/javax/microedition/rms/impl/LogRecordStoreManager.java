@@ -0,0 +1,611 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.rms.impl;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotFoundException;
+import javax.microedition.shell.AppClassLoader;
+
+import ru.playsoftware.j2meloader.util.FileUtils;
+
+/**
+ * Keeps every record store in a single append-only log file instead of
+ * one file per record.
+ * <p>
+ * Each mutation appends one record (or delete) entry followed by a header entry,
+ * so a save costs a single append to an existing file. The log is replayed when
+ * the store is opened; a torn tail left by a crash is detected by the entry checksum
+ * and cut off. A log damaged elsewhere is moved aside and the open fails. When
+ * the log holds more dead entries than live ones, it is compacted into a fresh file.
+ * Stores in the legacy layout of {@link AndroidRecordStoreManager} are converted
+ * on first open.
+ * <p>
+ * Enabled with the system property {@code rms.log-structured: true}.
+ */
+public class LogRecordStoreManager implements RecordStoreManager {
+	private static final String TAG = "RecordStore";
+
+	private static final String RECORD_STORE_LOG_SUFFIX = ".rsl";
+	private static final String RECORD_STORE_TMP_SUFFIX = ".tmp";
+	private static final String RECORD_STORE_BROKEN_SUFFIX = ".broken";
+	private static final byte[] LOG_IDENTIFIER = "MIDRMSLOG".getBytes();
+	private static final byte LOG_VERSION = 0x01;
+
+	private static final byte ENTRY_HEADER = 1;
+	private static final byte ENTRY_RECORD = 2;
+	private static final byte ENTRY_DELETE = 3;
+
+	/** type + payload length + crc32 of the payload */
+	private static final int ENTRY_OVERHEAD = 1 + 4 + 8;
+
+	/** Dead bytes the log may hold before it is compacted */
+	private static final int COMPACT_MIN_GARBAGE = 64 * 1024;
+
+	private final static Object NULL_STORE = new Object();
+
+	private Map<String, Object> recordStores = null;
+	private File dir;
+	private final Map<String, StoreLog> logs = new HashMap<>();
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+	private final CRC32 crc = new CRC32();
+
+	public LogRecordStoreManager() {
+	}
+
+	/**
+	 * @param dir directory of the record stores, instead of the MIDlet data directory
+	 */
+	LogRecordStoreManager(File dir) {
+		this.dir = dir;
+	}
+
+	@Override
+	public String getName() {
+		return "Android log-structured record store";
+	}
+
+	private synchronized void initializeIfNecessary() {
+		if (recordStores == null) {
+			if (dir == null) {
+				dir = new File(AppClassLoader.getDataDir());
+			}
+			recordStores = new ConcurrentHashMap<>();
+			String[] list = dir.list();
+			if (list != null) {
+				for (String fileName : list) {
+					String suffix;
+					if (fileName.endsWith(RECORD_STORE_LOG_SUFFIX)) {
+						suffix = RECORD_STORE_LOG_SUFFIX;
+					} else if (fileName.endsWith(AndroidRecordStoreManager.RECORD_STORE_HEADER_SUFFIX)) {
+						suffix = AndroidRecordStoreManager.RECORD_STORE_HEADER_SUFFIX;
+					} else {
+						continue;
+					}
+					recordStores.put(fileName.substring(0, fileName.length() - suffix.length()), NULL_STORE);
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void deleteRecordStore(String recordStoreName) throws RecordStoreException {
+		initializeIfNecessary();
+
+		recordStoreName = recordStoreName.replaceAll(FileUtils.ILLEGAL_FILENAME_CHARS, "");
+		Object value = recordStores.get(recordStoreName);
+		if (value == null) {
+			throw new RecordStoreNotFoundException(recordStoreName);
+		}
+		if (value instanceof RecordStoreImpl && ((RecordStoreImpl) value).isOpen()) {
+			throw new RecordStoreException();
+		}
+
+		//noinspection ResultOfMethodCallIgnored
+		getLogFile(recordStoreName).delete();
+		AndroidRecordStoreManager.deleteStoreFiles(recordStoreName);
+		logs.remove(recordStoreName);
+
+		recordStores.remove(recordStoreName);
+		Log.d(TAG, "RecordStore " + recordStoreName + " deleted");
+	}
+
+	@Override
+	public synchronized RecordStore openRecordStore(String recordStoreName, boolean createIfNecessary)
+			throws RecordStoreException {
+		initializeIfNecessary();
+		recordStoreName = recordStoreName.replaceAll(FileUtils.ILLEGAL_FILENAME_CHARS, "");
+
+		Object value = recordStores.get(recordStoreName);
+		if (value instanceof RecordStoreImpl && ((RecordStoreImpl) value).isOpen()) {
+			((RecordStoreImpl) value).setOpen();
+			return (RecordStoreImpl) value;
+		}
+
+		RecordStoreImpl recordStoreImpl = new RecordStoreImpl(this);
+		StoreLog log = new StoreLog(getLogFile(recordStoreName));
+		if (log.file.exists()) {
+			try {
+				replay(recordStoreImpl, log);
+			} catch (IOException e) {
+				// keep the data for recovery, the store is created again on the next open
+				File broken = new File(log.file.getPath() + '.' + System.currentTimeMillis()
+						+ RECORD_STORE_BROKEN_SUFFIX);
+				if (log.file.renameTo(broken)) {
+					recordStores.remove(recordStoreName);
+					Log.e(TAG, "openRecordStore: broken log moved to " + broken, e);
+				} else {
+					Log.e(TAG, "openRecordStore: broken log " + log.file, e);
+				}
+				throw new RecordStoreException("Broken record store: " + recordStoreName);
+			}
+		} else if (!migrate(recordStoreImpl, recordStoreName, log)) {
+			if (!createIfNecessary) {
+				throw new RecordStoreNotFoundException(recordStoreName);
+			}
+			recordStoreImpl = new RecordStoreImpl(this, recordStoreName);
+		}
+		recordStoreImpl.setOpen();
+		logs.put(recordStoreName, log);
+		if (log.length == 0 || needsCompaction(log)) {
+			compact(recordStoreImpl, log);
+		}
+
+		recordStores.put(recordStoreName, recordStoreImpl);
+		Log.d(TAG, "RecordStore " + recordStoreName + " opened");
+		return recordStoreImpl;
+	}
+
+	@Override
+	public String[] listRecordStores() {
+		initializeIfNecessary();
+
+		String[] result = recordStores.keySet().toArray(new String[0]);
+
+		if (result.length > 0) {
+			return result;
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized void deleteRecord(RecordStoreImpl recordStoreImpl, int recordId)
+			throws RecordStoreException {
+		StoreLog log = getLog(recordStoreImpl);
+		try {
+			buffer.reset();
+			bufferOut.writeInt(recordId);
+			int deleteSize = appendEntry(ENTRY_DELETE, 0);
+			int headerSize = appendHeader(recordStoreImpl);
+			write(log);
+			Slot old = log.index.remove(recordId);
+			if (old != null) {
+				log.liveBytes -= old.size;
+				log.garbageBytes += old.size;
+			}
+			log.garbageBytes += deleteSize + headerSize;
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.deleteRecord: ERROR writing to " + log.file, e);
+			throw new RecordStoreException(e.getMessage());
+		}
+		if (needsCompaction(log)) {
+			compact(recordStoreImpl, log);
+		}
+	}
+
+	@Override
+	public synchronized void loadRecord(RecordStoreImpl recordStoreImpl, int recordId)
+			throws RecordStoreException {
+		StoreLog log = getLog(recordStoreImpl);
+		Slot slot = log.index.get(recordId);
+		if (slot == null) {
+			throw new InvalidRecordIDException();
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(log.file, "r")) {
+			raf.seek(slot.offset + ENTRY_OVERHEAD);
+			byte[] payload = new byte[slot.size - ENTRY_OVERHEAD];
+			raf.readFully(payload);
+			synchronized (recordStoreImpl.records) {
+				recordStoreImpl.readRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.loadRecord: ERROR reading " + log.file, e);
+		}
+	}
+
+	@Override
+	public synchronized void saveRecord(RecordStoreImpl recordStoreImpl, int recordId)
+			throws RecordStoreException {
+		StoreLog log = getLog(recordStoreImpl);
+		try {
+			buffer.reset();
+			long offset = log.length;
+			recordStoreImpl.writeRecord(bufferOut, recordId);
+			int size = appendEntry(ENTRY_RECORD, 0);
+			int headerSize = appendHeader(recordStoreImpl);
+			write(log);
+			Slot old = log.index.put(recordId, new Slot(offset, size));
+			if (old != null) {
+				log.liveBytes -= old.size;
+				log.garbageBytes += old.size;
+			}
+			log.liveBytes += size;
+			log.garbageBytes += headerSize;
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.saveRecord: ERROR writing to " + log.file, e);
+			throw new RecordStoreException(e.getMessage());
+		}
+		if (needsCompaction(log)) {
+			compact(recordStoreImpl, log);
+		}
+	}
+
+	/**
+	 * Every mutation is appended to the log immediately, so only waits until
+	 * the appended entries are stored on the disk.
+	 */
+	@Override
+	public synchronized void flush() {
+		for (StoreLog log : logs.values()) {
+			if (!log.unsynced) {
+				continue;
+			}
+			try (FileOutputStream fos = new FileOutputStream(log.file, true)) {
+				fos.getFD().sync();
+				log.unsynced = false;
+			} catch (IOException e) {
+				Log.e(TAG, "RecordStore.flush: ERROR syncing " + log.file, e);
+			}
+		}
+	}
+
+	@Override
+	public int getSizeAvailable(RecordStoreImpl recordStoreImpl) {
+		return (int) Math.min(Integer.MAX_VALUE, dir.getUsableSpace());
+	}
+
+	private StoreLog getLog(RecordStoreImpl recordStoreImpl) throws RecordStoreException {
+		StoreLog log = logs.get(recordStoreImpl.getName());
+		if (log == null) {
+			throw new RecordStoreException("Record store is not opened by " + getName());
+		}
+		return log;
+	}
+
+	/**
+	 * Loads the store from the legacy one-file-per-record layout and removes the old files
+	 * once they are copied into the log.
+	 *
+	 * @return false if there is no store to migrate
+	 */
+	private boolean migrate(RecordStoreImpl recordStoreImpl, String recordStoreName, StoreLog log) {
+		File headerFile = new File(dir,
+				recordStoreName + AndroidRecordStoreManager.RECORD_STORE_HEADER_SUFFIX);
+		try (DataInputStream dis = new DataInputStream(new FileInputStream(headerFile))) {
+			recordStoreImpl.readHeader(dis);
+		} catch (FileNotFoundException e) {
+			return false;
+		} catch (IOException e) {
+			Log.w(TAG, "migrate: broken header " + headerFile, e);
+			return false;
+		}
+		AndroidRecordStoreManager.loadRecords(recordStoreImpl, recordStoreName);
+		try {
+			writeCompacted(recordStoreImpl, log);
+		} catch (IOException e) {
+			Log.e(TAG, "migrate: ERROR writing " + log.file, e);
+			return true;
+		}
+		AndroidRecordStoreManager.deleteStoreFiles(recordStoreName);
+		Log.i(TAG, "RecordStore " + recordStoreName + " migrated to " + log.file.getName());
+		return true;
+	}
+
+	/**
+	 * Loads the store from the log. Only the last write can be torn by a crash, so
+	 * a damaged entry is dropped only if no valid entry follows it.
+	 *
+	 * @throws IOException if the log can't be parsed
+	 */
+	private void replay(RecordStoreImpl recordStoreImpl, StoreLog log) throws IOException {
+		byte[] data;
+		try (FileInputStream fis = new FileInputStream(log.file)) {
+			data = new byte[(int) fis.getChannel().size()];
+			new DataInputStream(fis).readFully(data);
+		}
+		int pos = LOG_IDENTIFIER.length + 1;
+		if (data.length < pos) {
+			throw new IOException("Not a record store log");
+		}
+		for (int i = 0; i < LOG_IDENTIFIER.length; i++) {
+			if (data[i] != LOG_IDENTIFIER[i]) {
+				throw new IOException("Not a record store log");
+			}
+		}
+		if (data[LOG_IDENTIFIER.length] != LOG_VERSION) {
+			throw new IOException("Unsupported record store log version");
+		}
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		boolean hasHeader = false;
+		synchronized (recordStoreImpl.records) {
+			while (pos < data.length) {
+				int length = getEntryLength(buf, pos);
+				if (length < 0) {
+					break;
+				}
+				int payload = pos + ENTRY_OVERHEAD;
+				if (!isValidEntry(buf, pos, length)) {
+					if (!isTornTail(buf, payload + length)) {
+						throw new IOException("Damaged entry at " + pos);
+					}
+					break;
+				}
+				DataInputStream entry = new DataInputStream(
+						new ByteArrayInputStream(data, payload, length));
+				int size = ENTRY_OVERHEAD + length;
+				byte type = data[pos];
+				switch (type) {
+					case ENTRY_HEADER:
+						recordStoreImpl.readHeader(entry);
+						hasHeader = true;
+						log.garbageBytes += size;
+						break;
+					case ENTRY_RECORD: {
+						recordStoreImpl.readRecord(entry);
+						int recordId = buf.getInt(payload);
+						Slot old = log.index.put(recordId, new Slot(pos, size));
+						if (old != null) {
+							log.liveBytes -= old.size;
+							log.garbageBytes += old.size;
+						}
+						log.liveBytes += size;
+						break;
+					}
+					case ENTRY_DELETE: {
+						int recordId = entry.readInt();
+						recordStoreImpl.records.remove(recordId);
+						Slot old = log.index.remove(recordId);
+						if (old != null) {
+							log.liveBytes -= old.size;
+							log.garbageBytes += old.size;
+						}
+						log.garbageBytes += size;
+						break;
+					}
+					default:
+						throw new IOException("Unknown log entry type: " + type);
+				}
+				pos = payload + length;
+			}
+		}
+		if (!hasHeader) {
+			throw new IOException("Record store log has no header");
+		}
+		if (pos < data.length) {
+			Log.w(TAG, "replay: dropped " + (data.length - pos) + " bytes of torn tail in " + log.file);
+			try (RandomAccessFile raf = new RandomAccessFile(log.file, "rw")) {
+				raf.setLength(pos);
+			}
+		}
+		log.length = pos;
+	}
+
+	/**
+	 * @return payload length of the entry at the position, or -1 if the entry doesn't fit the log
+	 */
+	private static int getEntryLength(ByteBuffer buf, int pos) {
+		if (buf.limit() - pos < ENTRY_OVERHEAD) {
+			return -1;
+		}
+		int length = buf.getInt(pos + 1);
+		if (length < 0 || length > buf.limit() - pos - ENTRY_OVERHEAD) {
+			return -1;
+		}
+		return length;
+	}
+
+	private boolean isValidEntry(ByteBuffer buf, int pos, int length) {
+		crc.reset();
+		crc.update(buf.array(), pos + ENTRY_OVERHEAD, length);
+		return crc.getValue() == buf.getLong(pos + 5);
+	}
+
+	/**
+	 * @return true if there are no valid entries from the position to the end of the log
+	 */
+	private boolean isTornTail(ByteBuffer buf, int pos) {
+		while (pos < buf.limit()) {
+			int length = getEntryLength(buf, pos);
+			if (length < 0) {
+				return true;
+			}
+			if (isValidEntry(buf, pos, length)) {
+				return false;
+			}
+			pos += ENTRY_OVERHEAD + length;
+		}
+		return true;
+	}
+
+	private boolean needsCompaction(StoreLog log) {
+		return log.garbageBytes > COMPACT_MIN_GARBAGE && log.garbageBytes > log.liveBytes;
+	}
+
+	private void compact(RecordStoreImpl recordStoreImpl, StoreLog log) throws RecordStoreException {
+		try {
+			writeCompacted(recordStoreImpl, log);
+		} catch (IOException e) {
+			Log.e(TAG, "RecordStore.compact: ERROR writing " + log.file, e);
+			throw new RecordStoreException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes all live records into a temporary file and atomically replaces the log with it.
+	 */
+	private void writeCompacted(RecordStoreImpl recordStoreImpl, StoreLog log) throws IOException {
+		File tmp = new File(log.file.getPath() + RECORD_STORE_TMP_SUFFIX);
+		File dir = tmp.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create directory: " + dir);
+		}
+		ArrayList<Integer> ids;
+		synchronized (recordStoreImpl.records) {
+			ids = new ArrayList<>(recordStoreImpl.records.keySet());
+		}
+		HashMap<Integer, Slot> index = new HashMap<>();
+		long liveBytes = 0;
+		long written = 0;
+		int headerSize;
+		buffer.reset();
+		buffer.write(LOG_IDENTIFIER);
+		buffer.write(LOG_VERSION);
+		try (FileOutputStream fos = new FileOutputStream(tmp)) {
+			for (Integer id : ids) {
+				int start = buffer.size();
+				recordStoreImpl.writeRecord(bufferOut, id);
+				int size = appendEntry(ENTRY_RECORD, start);
+				index.put(id, new Slot(written + start, size));
+				liveBytes += size;
+				if (buffer.size() > COMPACT_MIN_GARBAGE) {
+					written += buffer.size();
+					buffer.writeTo(fos);
+					buffer.reset();
+				}
+			}
+			int start = buffer.size();
+			recordStoreImpl.writeHeader(bufferOut);
+			headerSize = appendEntry(ENTRY_HEADER, start);
+			written += buffer.size();
+			buffer.writeTo(fos);
+			buffer.reset();
+			fos.getFD().sync();
+		}
+		if (!tmp.renameTo(log.file)) {
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			throw new IOException("Can't replace " + log.file);
+		}
+		log.index.clear();
+		log.index.putAll(index);
+		log.length = written;
+		log.liveBytes = liveBytes;
+		log.garbageBytes = headerSize;
+	}
+
+	/**
+	 * @return the full size of the header entry, only the newest header is live,
+	 * so it counts as garbage right away
+	 */
+	private int appendHeader(RecordStoreImpl recordStoreImpl) throws IOException {
+		int start = buffer.size();
+		recordStoreImpl.writeHeader(bufferOut);
+		return appendEntry(ENTRY_HEADER, start);
+	}
+
+	/**
+	 * Wraps the payload written to the buffer since {@code start} into a log entry.
+	 *
+	 * @return the full size of the entry
+	 */
+	private int appendEntry(byte type, int start) throws IOException {
+		byte[] data = buffer.toByteArray();
+		int length = data.length - start;
+		crc.reset();
+		crc.update(data, start, length);
+		buffer.reset();
+		buffer.write(data, 0, start);
+		bufferOut.writeByte(type);
+		bufferOut.writeInt(length);
+		bufferOut.writeLong(crc.getValue());
+		buffer.write(data, start, length);
+		return ENTRY_OVERHEAD + length;
+	}
+
+	/**
+	 * Appends the buffer to the log. A partially appended buffer is cut off again,
+	 * otherwise the entries appended after it would be taken for a damaged log.
+	 */
+	private void write(StoreLog log) throws IOException {
+		int size = buffer.size();
+		try (FileOutputStream fos = new FileOutputStream(log.file, true)) {
+			buffer.writeTo(fos);
+		} catch (IOException e) {
+			try (RandomAccessFile raf = new RandomAccessFile(log.file, "rw")) {
+				raf.setLength(log.length);
+			} catch (IOException t) {
+				Log.e(TAG, "RecordStore.write: ERROR truncating " + log.file, t);
+			}
+			throw e;
+		} finally {
+			buffer.reset();
+		}
+		log.length += size;
+		log.unsynced = true;
+	}
+
+	private File getLogFile(String recordStoreName) {
+		return new File(dir, recordStoreName + RECORD_STORE_LOG_SUFFIX);
+	}
+
+	private static class StoreLog {
+		final File file;
+		/** record id -> position of the newest entry of this record in the log */
+		final HashMap<Integer, Slot> index = new HashMap<>();
+		long length;
+		long liveBytes;
+		long garbageBytes;
+		/** Entries were appended since the log was last synced */
+		boolean unsynced;
+
+		StoreLog(File file) {
+			this.file = file;
+		}
+	}
+
+	private static class Slot {
+		final long offset;
+		final int size;
+
+		Slot(long offset, int size) {
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+}
@@ -149,6 +149,7 @@ public class RecordStoreImpl extends RecordStore {
 
 	@Override
 	public void closeRecordStore() throws RecordStoreException {
+		recordStoreManager.flush();
 		synchronized (records) {
 			if (!open) {
 				throw new RecordStoreNotOpenException();
@@ -45,4 +45,9 @@ public interface RecordStoreManager {
 			throws RecordStoreException;
 
 	void saveRecord(RecordStoreImpl recordStoreImpl, int recordId) throws RecordStoreException;
+
+	/**
+	 * Writes all postponed changes to disk and waits until they are stored.
+	 */
+	void flush();
 }
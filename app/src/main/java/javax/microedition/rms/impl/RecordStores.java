@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.rms.impl;
+
+import javax.microedition.rms.RecordStore;
+
+/**
+ * Holds the record store manager used by {@link RecordStore}.
+ */
+public final class RecordStores {
+	private static final RecordStoreManager manager =
+			Boolean.getBoolean("rms.log-structured") ?
+					new LogRecordStoreManager() : new AndroidRecordStoreManager();
+
+	private RecordStores() {
+	}
+
+	public static RecordStoreManager getManager() {
+		return manager;
+	}
+
+	/**
+	 * Writes all postponed record store changes to disk and waits until they are stored.
+	 */
+	public static void flush() {
+		manager.flush();
+	}
+}
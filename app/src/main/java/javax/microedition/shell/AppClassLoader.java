@@ -18,6 +18,7 @@
 package javax.microedition.shell;
 
 import android.util.Log;
+import android.util.LruCache;
 
 import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
@@ -28,6 +29,8 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
 
 import dalvik.system.DexClassLoader;
 import ru.playsoftware.j2meloader.BuildConfig;
@@ -37,9 +40,21 @@ import ru.playsoftware.j2meloader.util.IOUtils;
 
 public class AppClassLoader extends DexClassLoader {
 	private static final String TAG = AppClassLoader.class.getName();
+	/** Decoded resources bigger than this are not cached */
+	private static final int RES_CACHE_MAX_ENTRY = 512 * 1024;
+	/** The cache statistics are logged every this many misses */
+	private static final int RES_CACHE_LOG_INTERVAL = 64;
 
 	private static AppClassLoader instance;
 	private static ZipFile zipFile;
+	private static HashMap<String, FileHeader> zipEntries;
+	private static final LruCache<String, byte[]> resCache = new LruCache<String, byte[]>(
+			(int) Math.min(Runtime.getRuntime().maxMemory() / 16, 8 * 1024 * 1024)) {
+		@Override
+		protected int sizeOf(String key, byte[] value) {
+			return value.length;
+		}
+	};
 	private static String dataDir;
 	private static File oldResDir;
 
@@ -52,6 +67,23 @@ public class AppClassLoader extends DexClassLoader {
 		setDataDir(appDir);
 		File jar = new File(appDir, Config.MIDLET_RES_FILE);
 		zipFile = jar.exists() ? new ZipFile(jar) : null;
+		resCache.evictAll();
+		zipEntries = null;
+		if (zipFile != null) {
+			try {
+				List<FileHeader> headers = zipFile.getFileHeaders();
+				HashMap<String, FileHeader> entries = new HashMap<>(headers.size() * 2);
+				for (FileHeader header : headers) {
+					if (!header.isDirectory()) {
+						// the lookups use slashes, some jars are packed with backslashes
+						entries.put(normalizePath(header.getFileName()), header);
+					}
+				}
+				zipEntries = entries;
+			} catch (ZipException e) {
+				Log.e(TAG, "Can't read resources index", e);
+			}
+		}
 	}
 
 	public static void setDataDir(File appDir) {
@@ -64,10 +96,20 @@ public class AppClassLoader extends DexClassLoader {
 			Log.w(TAG, "Can't load res on empty path");
 			return null;
 		}
-		// Add support for Siemens file path
-		String normName = resName.replace('\\', '/');
-		// Remove double slashes
-		normName = normName.replaceAll("//+", "/");
+		byte[] data = getResourceBytes(getResourceName(resClass, resName), false);
+		if (data == null) {
+			Log.w(TAG, "Can't load res: " + resName);
+			return null;
+		}
+		return new ByteArrayInputStream(data);
+	}
+
+	/**
+	 * Returns the jar entry name for the resource, as it would be looked up by
+	 * {@link #getResourceAsStream(Class, String)}.
+	 */
+	public static String getResourceName(Class<?> resClass, String resName) {
+		String normName = normalizePath(resName);
 		if (normName.charAt(0) != '/' && resClass != null && resClass.getPackage() != null) {
 			String className = resClass.getPackage().getName().replace('.', '/');
 			normName = className + "/" + normName;
@@ -76,12 +118,14 @@ public class AppClassLoader extends DexClassLoader {
 		if (normName.charAt(0) == '/') {
 			normName = normName.substring(1);
 		}
-		byte[] data = getResourceBytes(normName);
-		if (data == null) {
-			Log.w(TAG, "Can't load res: " + resName);
-			return null;
-		}
-		return new ByteArrayInputStream(data);
+		return normName;
+	}
+
+	/**
+	 * @return hits, misses and hit rate of the resource cache
+	 */
+	public static String getResourceCacheStats() {
+		return resCache.toString();
 	}
 
 	public static String getDataDir() {
@@ -93,15 +137,7 @@ public class AppClassLoader extends DexClassLoader {
 			Log.w(TAG, "Can't load res on empty path");
 			return null;
 		}
-		// Add support for Siemens file path
-		String normName = resName.replace('\\', '/');
-		// Remove double slashes
-		normName = normName.replaceAll("//+", "/");
-		// Remove leading slash
-		if (normName.charAt(0) == '/') {
-			normName = normName.substring(1);
-		}
-		byte[] data = getResourceBytes(normName);
+		byte[] data = getResourceBytes(getResourceName(null, resName), true);
 		if (data == null) {
 			Log.w(TAG, "Can't load res: " + resName);
 			return null;
@@ -109,7 +145,45 @@ public class AppClassLoader extends DexClassLoader {
 		return data;
 	}
 
-	private static byte[] getResourceBytes(String name) {
+	/**
+	 * Replaces Siemens-style backslashes with slashes and collapses repeated slashes.
+	 * Returns the same string if it is already normalized.
+	 */
+	private static String normalizePath(String name) {
+		int len = name.length();
+		int i = 0;
+		char prev = 0;
+		for (; i < len; i++) {
+			char c = name.charAt(i);
+			if (c == '\\' || (c == '/' && prev == '/')) {
+				break;
+			}
+			prev = c;
+		}
+		if (i == len) {
+			return name;
+		}
+		StringBuilder sb = new StringBuilder(len);
+		sb.append(name, 0, i);
+		for (; i < len; i++) {
+			char c = name.charAt(i);
+			if (c == '\\') {
+				c = '/';
+			}
+			if (c == '/' && prev == '/') {
+				continue;
+			}
+			sb.append(c);
+			prev = c;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param copy return a copy of the array if it is shared with the cache,
+	 *             as the caller may modify it
+	 */
+	private static byte[] getResourceBytes(String name, boolean copy) {
 		if (name.equals("")) {
 			Log.w(TAG, "Can't load res on empty path");
 			return null;
@@ -136,15 +210,26 @@ public class AppClassLoader extends DexClassLoader {
 				return null;
 			}
 		}
+		byte[] data = resCache.get(name);
+		if (data != null) {
+			return copy ? data.clone() : data;
+		}
+		if (resCache.missCount() % RES_CACHE_LOG_INTERVAL == 0) {
+			Log.d(TAG, "getResourceBytes: " + resCache);
+		}
 		DataInputStream dis = null;
 		try {
-			FileHeader header = zipFile.getFileHeader(name);
+			FileHeader header = zipEntries != null ? zipEntries.get(name) : zipFile.getFileHeader(name);
 			if (header == null) {
 				return null;
 			}
 			dis = new DataInputStream(zipFile.getInputStream(header));
-			byte[] data = new byte[(int) header.getUncompressedSize()];
+			data = new byte[(int) header.getUncompressedSize()];
 			dis.readFully(data);
+			if (data.length <= RES_CACHE_MAX_ENTRY) {
+				resCache.put(name, data);
+				return copy ? data.clone() : data;
+			}
 			return data;
 		} catch (Exception e) {
 			Log.e(TAG, "getResourceBytes: ", e);
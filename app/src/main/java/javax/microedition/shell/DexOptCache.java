@@ -0,0 +1,186 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import kotlin.io.ConstantsKt;
+import kotlin.io.FilesKt;
+import ru.playsoftware.j2meloader.BuildConfig;
+import ru.playsoftware.j2meloader.util.FileUtils;
+
+/**
+ * Per-app cache of the optimized MIDlet code.
+ * <p>
+ * Every app gets its own directory, so the output of the dex optimizer survives
+ * between launches. The directory is reused while the key (hash of the dex file
+ * and the emulator version) stays the same. The least recently launched entries
+ * are evicted when the cache grows over {@link #SIZE_LIMIT}.
+ */
+class DexOptCache {
+	private static final String TAG = DexOptCache.class.getName();
+	private static final String KEY_FILE = "cache.key";
+	private static final long SIZE_LIMIT = 128 * 1024 * 1024;
+	/** Entries launched within this time may be being loaded by another MIDlet process */
+	private static final long IN_USE_TIME = 10 * 60 * 1000;
+	//noinspection CharsetObjectCanBeUsed
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File entryDir;
+	private final File dexFile;
+
+	DexOptCache(File cacheDir, File dexSource, String appDirName) throws IOException {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("Can't create directory: [" + cacheDir + ']');
+		}
+		entryDir = new File(cacheDir, appDirName);
+		if (entryDir.isFile()) {
+			// dex copy from the old layout
+			//noinspection ResultOfMethodCallIgnored
+			entryDir.delete();
+		}
+		File keyFile = new File(entryDir, KEY_FILE);
+		// protects the entry from trim() in other processes while it is checked
+		//noinspection ResultOfMethodCallIgnored
+		keyFile.setLastModified(System.currentTimeMillis());
+		String key = getKey(dexSource);
+		File dex = SDK_INT >= UPSIDE_DOWN_CAKE ? new File(entryDir, appDirName + ".dex") : dexSource;
+		boolean valid = keyFile.isFile()
+				&& key.equals(FilesKt.readText(keyFile, UTF_8))
+				&& dex.isFile();
+		if (!valid) {
+			if (entryDir.isDirectory()) {
+				FileUtils.clearDirectory(entryDir);
+			} else if (!entryDir.mkdir()) {
+				throw new IOException("Can't create directory: [" + entryDir + ']');
+			}
+			if (dex != dexSource) {
+				// Since Android 14 dynamically loaded dex files must be read-only
+				FilesKt.copyTo(dexSource, dex, true, ConstantsKt.DEFAULT_BUFFER_SIZE);
+				if (!dex.setReadOnly()) {
+					throw new IOException("Can't set readOnly flag for dex cache file");
+				}
+			}
+			FilesKt.writeText(keyFile, key, UTF_8);
+			Log.i(TAG, "Dex cache created for " + appDirName);
+		} else {
+			Log.i(TAG, "Dex cache reused for " + appDirName);
+		}
+		//noinspection ResultOfMethodCallIgnored
+		keyFile.setLastModified(System.currentTimeMillis());
+		dexFile = dex;
+		trim(cacheDir);
+	}
+
+	File getDexFile() {
+		return dexFile;
+	}
+
+	File getOptimizedDir() {
+		return entryDir;
+	}
+
+	private static String getKey(File dexSource) throws IOException {
+		try (InputStream is = new FileInputStream(dexSource)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buf = new byte[ConstantsKt.DEFAULT_BUFFER_SIZE];
+			int read;
+			while ((read = is.read(buf)) != -1) {
+				digest.update(buf, 0, read);
+			}
+			String hash = String.format("%064x", new BigInteger(1, digest.digest()));
+			return hash + ':' + BuildConfig.VERSION_CODE + ':' + BuildConfig.VERSION_NAME;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Removes the least recently launched entries until the cache fits into the size limit.
+	 */
+	private void trim(File cacheDir) {
+		File[] files = cacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long total = 0;
+		long[] sizes = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			File file = files[i];
+			if (!file.isDirectory()) {
+				// left from the old layout, when the cache was cleared on every launch
+				//noinspection ResultOfMethodCallIgnored
+				file.delete();
+				continue;
+			}
+			sizes[i] = getSize(file);
+			total += sizes[i];
+		}
+		if (total <= SIZE_LIMIT) {
+			return;
+		}
+		Integer[] order = new Integer[files.length];
+		long[] lastUsed = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			order[i] = i;
+			lastUsed[i] = new File(files[i], KEY_FILE).lastModified();
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+		long inUse = System.currentTimeMillis() - IN_USE_TIME;
+		for (int i : order) {
+			if (total <= SIZE_LIMIT || lastUsed[i] > inUse) {
+				break;
+			}
+			File file = files[i];
+			if (sizes[i] == 0 || file.equals(entryDir)) {
+				continue;
+			}
+			if (FileUtils.deleteDirectory(file)) {
+				total -= sizes[i];
+				Log.i(TAG, "Dex cache evicted: " + file.getName());
+			}
+		}
+	}
+
+	private static long getSize(File file) {
+		if (!file.isDirectory()) {
+			return file.length();
+		}
+		File[] files = file.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		long size = 0;
+		for (File f : files) {
+			size += getSize(f);
+		}
+		return size;
+	}
+}
@@ -17,9 +17,6 @@
 
 package javax.microedition.shell;
 
-import static android.os.Build.VERSION.SDK_INT;
-import static android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE;
-
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Environment;
@@ -53,6 +50,7 @@ import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Display;
 import javax.microedition.lcdui.Displayable;
 import javax.microedition.lcdui.Font;
+import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.event.EventQueue;
 import javax.microedition.lcdui.keyboard.KeyMapper;
 import javax.microedition.lcdui.keyboard.VirtualKeyboard;
@@ -63,8 +61,6 @@ import javax.microedition.util.ContextHolder;
 import io.reactivex.SingleObserver;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
-import kotlin.io.ConstantsKt;
-import kotlin.io.FilesKt;
 import ru.playsoftware.j2meloader.BuildConfig;
 import ru.playsoftware.j2meloader.config.Config;
 import ru.playsoftware.j2meloader.config.ProfileModel;
@@ -177,22 +173,11 @@ public class MicroLoader {
 		if (BuildConfig.FULL_EMULATOR) {
 			File dexSource = new File(appDir, Config.MIDLET_DEX_FILE);
 			File codeCacheDir = ContextCompat.getCodeCacheDir(context);
-			File dexOptDir = new File(codeCacheDir, Config.DEX_OPT_CACHE_DIR);
-			if (dexOptDir.exists()) {
-				FileUtils.clearDirectory(dexOptDir);
-			} else if (!dexOptDir.mkdir()) {
-				throw new IOException("Can't create directory: [" + dexOptDir + ']');
-			}
-			if (SDK_INT >= UPSIDE_DOWN_CAKE) {
-				File dexCache = new File(dexOptDir, appDirName);
-				FilesKt.copyTo(dexSource, dexCache, true, ConstantsKt.DEFAULT_BUFFER_SIZE);
-				if (!dexCache.setReadOnly()) {
-					throw new IOException("Can't set readOnly flag for dex cache file");
-				}
-				dexSource = dexCache;
-			}
+			DexOptCache dexCache = new DexOptCache(new File(codeCacheDir, Config.DEX_OPT_CACHE_DIR),
+					dexSource, appDirName);
+			dexSource = dexCache.getDexFile();
 			ClassLoader loader = new AppClassLoader(dexSource.getAbsolutePath(),
-					dexOptDir.getAbsolutePath(), context.getClassLoader(), appDir);
+					dexCache.getOptimizedDir().getAbsolutePath(), context.getClassLoader(), appDir);
 			Log.i(TAG, "loadMIDletList main: " + mainClass + " from dex:" + dexSource.getPath());
 			//noinspection unchecked
 			Class<MIDlet> clazz = (Class<MIDlet>) loader.loadClass(mainClass);
@@ -274,7 +259,9 @@ public class MicroLoader {
 			Canvas.setShaderFilter(shader);
 			Canvas.setForceFullscreen(params.forceFullscreen);
 			Canvas.setShowFps(params.showFps);
+			Canvas.setShowPerfHud(params.showPerfHud);
 			Canvas.setLimitFps(params.fpsLimit);
+			Image.setCacheEnabled(params.imageCache);
 
 			Font.applySettings(params);
 
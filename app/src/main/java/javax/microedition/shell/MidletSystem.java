@@ -5,6 +5,7 @@ import android.util.Log;
 
 import androidx.annotation.Keep;
 
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,9 +16,38 @@ import javax.microedition.lcdui.Display;
 public final class MidletSystem {
     private static final String TAG = MidletSystem.class.getName();
     private static final Map<String, String> PROPERTY = new HashMap<>();
+    private static final String ENCODING = "microedition.encoding";
+    private static volatile Charset encoding;
 
     static void setProperty(String key, String value) {
         PROPERTY.put(key, value);
+        if (ENCODING.equals(key)) {
+            encoding = null;
+        }
+    }
+
+    /**
+     * Returns the charset used by the instrumented String and stream methods
+     * in place of the platform default. It is resolved once per property change.
+     */
+    public static Charset getEncoding() {
+        Charset charset = encoding;
+        if (charset == null) {
+            String name = System.getProperty(ENCODING);
+            try {
+                charset = Charset.forName(name);
+            } catch (Exception e) {
+                Log.w(TAG, "Unsupported " + ENCODING + ": " + name + ", using ISO-8859-1", e);
+                charset = Charset.forName("ISO-8859-1");
+            }
+            encoding = charset;
+        }
+        return charset;
+    }
+
+    /** Name of the {@link #getEncoding()} charset, for methods not accepting Charset */
+    public static String getEncodingName() {
+        return getEncoding().name();
     }
 
     public static String getProperty(String key) {
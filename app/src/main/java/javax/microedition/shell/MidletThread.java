@@ -27,6 +27,7 @@ import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Displayable;
 import javax.microedition.midlet.MIDlet;
 import javax.microedition.midlet.MIDletStateChangeException;
+import javax.microedition.rms.impl.RecordStores;
 import javax.microedition.util.ContextHolder;
 
 import androidx.annotation.NonNull;
@@ -72,6 +73,7 @@ public class MidletThread extends HandlerThread implements Handler.Callback {
 		if (instance != null) {
 			instance.state = DESTROYED;
 		}
+		RecordStores.flush();
 		MicroActivity activity = ContextHolder.getActivity();
 		if (activity != null) {
 			activity.finish();
@@ -157,6 +159,7 @@ public class MidletThread extends HandlerThread implements Handler.Callback {
 				try {
 					midlet.pauseApp();
 					state = PAUSED;
+					RecordStores.flush();
 				} catch (Throwable t) {
 					state = DESTROYED;
 					try {
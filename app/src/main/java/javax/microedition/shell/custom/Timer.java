@@ -24,8 +24,9 @@ import java.util.Date;
  * Prefer {@link java.util.concurrent.ScheduledThreadPoolExecutor
  * ScheduledThreadPoolExecutor} for new code.
  *
- * <p>Each timer has one thread on which tasks are executed sequentially. When
- * this thread is busy running a task, runnable tasks may be subject to delays.
+ * <p>Tasks of each timer are executed sequentially. When a timer is busy running
+ * a task, its other runnable tasks may be subject to delays. Timers don't own a
+ * thread, they are run on the workers of the shared {@link TimerScheduler}.
  *
  * <p>One-shot tasks are scheduled to run at an absolute time or after a relative
  * delay.
@@ -53,7 +54,7 @@ import java.util.Date;
  */
 public class Timer {
 
-    private static final class TimerImpl extends Thread {
+    private static final class TimerImpl implements Runnable {
 
         private static final class TimerHeap {
             private int DEFAULT_HEAP_SIZE = 256;
@@ -80,6 +81,7 @@ public class Timer {
                 }
                 timers[size++] = task;
                 upHeap();
+                TimerScheduler.taskCountChanged(1);
             }
 
             public void delete(int pos) {
@@ -88,6 +90,7 @@ public class Timer {
                     timers[pos] = timers[--size];
                     timers[size] = null;
                     downHeap(pos);
+                    TimerScheduler.taskCountChanged(-1);
                 }
             }
 
@@ -135,6 +138,7 @@ public class Timer {
             }
 
             public void reset() {
+                TimerScheduler.taskCountChanged(-size);
                 timers = new TimerTask[DEFAULT_HEAP_SIZE];
                 size = 0;
             }
@@ -172,9 +176,14 @@ public class Timer {
         private boolean cancelled;
 
         /**
-         * True if the Timer has become garbage
+         * True while the tasks are run on a worker thread
          */
-        private boolean finished;
+        private boolean running;
+
+        /**
+         * Time of the earliest requested wakeup, {@code Long.MAX_VALUE} if none
+         */
+        private long wakeupTime = Long.MAX_VALUE;
 
         /**
          * Contains scheduled events, sorted according to
@@ -182,42 +191,66 @@ public class Timer {
          */
         private TimerHeap tasks = new TimerHeap();
 
+        private final String name;
+
+        private final Runnable wakeup = this::onWakeup;
+
         /**
-         * Starts a new timer.
+         * Creates a new timer.
          *
-         * @param name thread's name
-         * @param isDaemon daemon thread or not
+         * @param name name of the worker thread while it runs the tasks
          */
-        TimerImpl(String name, boolean isDaemon) {
-            this.setName(name);
-            this.setDaemon(isDaemon);
-            this.start();
+        TimerImpl(String name) {
+            this.name = name;
         }
 
         /**
-         * This method will be launched on separate thread for each Timer
-         * object.
+         * Called on the scheduler thread when the earliest task may be due.
+         */
+        private void onWakeup() {
+            synchronized (this) {
+                wakeupTime = Long.MAX_VALUE;
+                if (running || cancelled || tasks.isEmpty()) {
+                    // a running timer requests the next wakeup by itself
+                    return;
+                }
+                running = true;
+            }
+            TimerScheduler.execute(this);
+        }
+
+        private void requestWakeup(long when) {
+            // callers are synchronized
+            if (when < wakeupTime) {
+                wakeupTime = when;
+                TimerScheduler.schedule(wakeup, when);
+            }
+        }
+
+        /**
+         * Runs the due tasks on a worker thread.
          */
         @Override
         public void run() {
+            Thread worker = Thread.currentThread();
+            String workerName = worker.getName();
+            worker.setName(name);
+            try {
+                runTasks();
+            } finally {
+                worker.setName(workerName);
+            }
+        }
+
+        private void runTasks() {
             while (true) {
                 TimerTask task;
                 synchronized (this) {
                     // need to check cancelled inside the synchronized block
-                    if (cancelled) {
+                    if (cancelled || tasks.isEmpty()) {
+                        running = false;
                         return;
                     }
-                    if (tasks.isEmpty()) {
-                        if (finished) {
-                            return;
-                        }
-                        // no tasks scheduled -- sleep until any task appear
-                        try {
-                            this.wait();
-                        } catch (InterruptedException ignored) {
-                        }
-                        continue;
-                    }
 
                     long currentTime = System.currentTimeMillis();
 
@@ -235,12 +268,10 @@ public class Timer {
                     }
 
                     if (timeToSleep > 0) {
-                        // sleep!
-                        try {
-                            this.wait(timeToSleep);
-                        } catch (InterruptedException ignored) {
-                        }
-                        continue;
+                        // release the worker until the task is due
+                        running = false;
+                        requestWakeup(task.when);
+                        return;
                     }
 
                     // no sleep is necessary before launching the task
@@ -274,7 +305,7 @@ public class Timer {
                             }
 
                             // insert this task into queue
-                            insertTask(task);
+                            tasks.insert(task);
                         } else {
                             task.when = 0;
                         }
@@ -294,6 +325,7 @@ public class Timer {
                     if (!taskCompletedNormally) {
                         synchronized (this) {
                             cancelled = true;
+                            running = false;
                         }
                     }
                 }
@@ -303,7 +335,9 @@ public class Timer {
         private void insertTask(TimerTask newTask) {
             // callers are synchronized
             tasks.insert(newTask);
-            this.notify();
+            if (!running) {
+                requestWakeup(tasks.minimum().when);
+            }
         }
 
         /**
@@ -312,7 +346,6 @@ public class Timer {
         public synchronized void cancel() {
             cancelled = true;
             tasks.reset();
-            this.notify();
         }
 
         public int purge() {
@@ -327,25 +360,6 @@ public class Timer {
 
     }
 
-    private static final class FinalizerHelper {
-        private final TimerImpl impl;
-
-        FinalizerHelper(TimerImpl impl) {
-            this.impl = impl;
-        }
-
-        @Override protected void finalize() throws Throwable {
-            try {
-                synchronized (impl) {
-                    impl.finished = true;
-                    impl.notify();
-                }
-            } finally {
-                super.finalize();
-            }
-        }
-    }
-
     private static long timerId;
 
     private synchronized static long nextId() {
@@ -355,13 +369,9 @@ public class Timer {
     /* This object will be used in synchronization purposes */
     private final TimerImpl impl;
 
-    // Used to finalize thread
-    @SuppressWarnings("unused")
-    private final FinalizerHelper finalizer;
-
     /**
-     * Creates a new named {@code Timer} which may be specified to be run as a
-     * daemon thread.
+     * Creates a new named {@code Timer}. The timers are run on shared daemon
+     * threads, so {@code isDaemon} has no effect.
      *
      * @throws NullPointerException if {@code name == null}
      */
@@ -369,8 +379,7 @@ public class Timer {
         if (name == null) {
             throw new NullPointerException("name == null");
         }
-        this.impl = new TimerImpl(name, isDaemon);
-        this.finalizer = new FinalizerHelper(impl);
+        this.impl = new TimerImpl(name);
     }
 
     /**
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2023 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell.custom;
+
+import android.util.Log;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduler of all the {@link Timer}s.
+ * <p>
+ * A single thread waits for the earliest wakeup requested by any timer, and the
+ * timers with due tasks are run on a pool of worker threads. A timer runs on at
+ * most one worker at a time, so its tasks are still executed sequentially, and
+ * idle timers don't hold a thread. The pool grows when tasks of several timers
+ * run at the same time, so a task blocking its thread does not delay other timers.
+ */
+final class TimerScheduler {
+    private static final String TAG = TimerScheduler.class.getName();
+    private static final int CORE_WORKERS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final PriorityQueue<Wakeup> wakeups = new PriorityQueue<>();
+    private static final AtomicInteger scheduledTasks = new AtomicInteger();
+    private static final AtomicInteger runningTimers = new AtomicInteger();
+    private static final ThreadPoolExecutor workers = new ThreadPoolExecutor(
+            CORE_WORKERS, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), new WorkerFactory());
+
+    private static Thread thread;
+    private static long wakeupSeq;
+
+    private TimerScheduler() {
+    }
+
+    /**
+     * Calls the callback on the scheduler thread once the time has come.
+     * The callback must not block.
+     *
+     * @param callback the callback
+     * @param when     time in milliseconds, as returned by {@link System#currentTimeMillis()}
+     */
+    static void schedule(Runnable callback, long when) {
+        synchronized (wakeups) {
+            Wakeup wakeup = new Wakeup(callback, when, wakeupSeq++);
+            wakeups.add(wakeup);
+            if (thread == null) {
+                thread = new Thread(TimerScheduler::loop, "TimerScheduler");
+                thread.setDaemon(true);
+                thread.start();
+            } else if (wakeups.peek() == wakeup) {
+                wakeups.notify();
+            }
+        }
+    }
+
+    /**
+     * Runs the timer tasks on a worker thread.
+     */
+    static void execute(Runnable timer) {
+        runningTimers.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                timer.run();
+            } finally {
+                runningTimers.decrementAndGet();
+            }
+        });
+    }
+
+    static void taskCountChanged(int delta) {
+        scheduledTasks.addAndGet(delta);
+    }
+
+    /**
+     * @return number of tasks scheduled in all the timers
+     */
+    static int getScheduledTaskCount() {
+        return scheduledTasks.get();
+    }
+
+    /**
+     * @return number of timers running their tasks right now
+     */
+    static int getRunningTimerCount() {
+        return runningTimers.get();
+    }
+
+    private static void loop() {
+        while (true) {
+            Runnable callback;
+            synchronized (wakeups) {
+                Wakeup wakeup = wakeups.peek();
+                if (wakeup == null) {
+                    try {
+                        wakeups.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                    continue;
+                }
+                long timeToSleep = wakeup.when - System.currentTimeMillis();
+                if (timeToSleep > 0) {
+                    try {
+                        wakeups.wait(timeToSleep);
+                    } catch (InterruptedException ignored) {
+                    }
+                    continue;
+                }
+                wakeups.poll();
+                callback = wakeup.callback;
+            }
+            try {
+                callback.run();
+            } catch (Throwable e) {
+                Log.e(TAG, "loop: ", e);
+            }
+        }
+    }
+
+    private static final class Wakeup implements Comparable<Wakeup> {
+        final Runnable callback;
+        final long when;
+        final long seq;
+
+        Wakeup(Runnable callback, long when, long seq) {
+            this.callback = callback;
+            this.when = when;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Wakeup other) {
+            if (when != other.when) {
+                return when < other.when ? -1 : 1;
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "TimerWorker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -224,6 +224,7 @@ public class ConfigActivity extends BaseActivity implements View.OnClickListener
 				switch (position) {
 					case 0:
 					case 3:
+					case 4:
 						binding.parallelScreenRedrawingToggle.setVisibility(View.VISIBLE);
 						binding.shaderRoot.setVisibility(View.GONE);
 						break;
@@ -568,6 +569,8 @@ public class ConfigActivity extends BaseActivity implements View.OnClickListener
 		binding.forceFullscreenToggle.setChecked(params.forceFullscreen);
 		binding.graphicalModeSelector.setSelection(params.graphicsMode);
 		binding.showFpsToggle.setChecked(params.showFps);
+		binding.perfHudToggle.setChecked(params.showPerfHud);
+		binding.imageCacheToggle.setChecked(params.imageCache);
 		binding.shaderSelector.setSelection(0);
 		if (spShaderAdapter != null) {
 			ShaderInfo shader = params.shader;
@@ -643,6 +646,8 @@ public class ConfigActivity extends BaseActivity implements View.OnClickListener
 			params.parallelRedrawScreen = binding.parallelScreenRedrawingToggle.isChecked();
 			params.forceFullscreen = binding.forceFullscreenToggle.isChecked();
 			params.showFps = binding.showFpsToggle.isChecked();
+			params.showPerfHud = binding.perfHudToggle.isChecked();
+			params.imageCache = binding.imageCacheToggle.isChecked();
 			params.fpsLimit = parseInt(binding.fpsLimit.getText().toString());
 
 			try {
@@ -86,6 +86,12 @@ public class ProfileModel {
 	@SerializedName("ShowFps")
 	public boolean showFps;
 
+	@SerializedName("ShowPerfHud")
+	public boolean showPerfHud;
+
+	@SerializedName("ImageCache")
+	public boolean imageCache;
+
 	@SerializedName("FpsLimit")
 	public int fpsLimit;
 
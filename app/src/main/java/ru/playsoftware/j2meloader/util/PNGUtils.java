@@ -22,7 +22,6 @@ import android.graphics.BitmapFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 
 import ar.com.hjg.pngj.ImageInfo;
 import ar.com.hjg.pngj.ImageLineHelper;
@@ -49,8 +48,7 @@ public class PNGUtils {
 
 	public static Bitmap getFixedBitmap(byte[] imageData, int imageOffset, int imageLength) {
 		Bitmap b = null;
-		byte[] signature = Arrays.copyOfRange(imageData, imageOffset, imageOffset + PNG_SIGNATURE.length);
-		if (Arrays.equals(signature, PNG_SIGNATURE)) {
+		if (hasPngSignature(imageData, imageOffset, imageLength)) {
 			try (ByteArrayInputStream stream = new ByteArrayInputStream(imageData, imageOffset, imageLength)) {
 				b = fixPNG(stream);
 			} catch (Exception e) {
@@ -63,6 +61,18 @@ public class PNGUtils {
 		return b;
 	}
 
+	private static boolean hasPngSignature(byte[] data, int offset, int length) {
+		if (length < PNG_SIGNATURE.length || data.length - offset < PNG_SIGNATURE.length) {
+			return false;
+		}
+		for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+			if (data[offset + i] != PNG_SIGNATURE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private static Bitmap fixPNG(InputStream stream) throws IOException {
 		PngReaderInt reader = new PngReaderInt(stream);
 		reader.setCrcCheckDisabled();
@@ -70,38 +80,56 @@ public class PNGUtils {
 		int width = imageInfo.cols;
 		int height = imageInfo.rows;
 		PngChunkTRNS trns = reader.getMetadata().getTRNS();
-		PngChunkPLTE plte = reader.getMetadata().getPLTE();
-		ImageLineSetDefault<ImageLineInt> lineSet = (ImageLineSetDefault) reader.readRows();
+		int[] palette = imageInfo.indexed ? paletteToARGB32(reader.getMetadata().getPLTE(), trns) : null;
 		int[] pix = new int[width * height];
-		int[] buf = new int[width];
-		for (int i = 0; i < height; i++) {
-			ImageLineInt lineInt = lineSet.getImageLine(i);
-			ImageLineHelper.scaleUp(lineInt);
-			int[] r = lineToARGB32(lineInt, plte, trns, buf);
-			for (int j = 0; j < width; j++) {
-				pix[i * width + j] = r[j];
+		if (reader.isInterlaced()) {
+			// rows of interlaced images can be decoded only all at once
+			ImageLineSetDefault<ImageLineInt> lineSet = (ImageLineSetDefault) reader.readRows();
+			for (int i = 0; i < height; i++) {
+				lineToARGB32(lineSet.getImageLine(i), palette, trns, pix, i * width);
+			}
+		} else {
+			// decode row by row, reusing the same line
+			for (int i = 0; i < height; i++) {
+				lineToARGB32(reader.readRowInt(), palette, trns, pix, i * width);
 			}
 		}
 		reader.end();
-		return Bitmap.createBitmap(pix, width, height, Bitmap.Config.ARGB_8888);
+		Bitmap bitmap = Bitmap.createBitmap(pix, width, height, Bitmap.Config.ARGB_8888);
+		int opaque = 0xFF000000;
+		for (int p : pix) {
+			opaque &= p;
+		}
+		if (opaque == 0xFF000000) {
+			// lets the renderer skip blending
+			bitmap.setHasAlpha(false);
+		}
+		return bitmap;
+	}
+
+	private static int[] paletteToARGB32(PngChunkPLTE pal, PngChunkTRNS trns) {
+		int size = pal.getNentries();
+		int[] palette = new int[256];
+		int[] alpha = trns != null ? trns.getPalletteAlpha() : null;
+		int nindexesWithAlpha = alpha != null ? alpha.length : 0;
+		for (int i = 0; i < size; i++) {
+			int a = i < nindexesWithAlpha ? alpha[i] : 255;
+			palette[i] = (a << 24) | pal.getEntry(i);
+		}
+		return palette;
 	}
 
-	private static int[] lineToARGB32(ImageLineInt line, PngChunkPLTE pal, PngChunkTRNS trns, int[] buf) {
+	private static void lineToARGB32(ImageLineInt line, int[] palette, PngChunkTRNS trns, int[] dst, int offset) {
 		boolean alphachannel = line.imgInfo.alpha;
 		int[] scanline = line.getScanline();
 		int cols = line.imgInfo.cols;
-		if (buf == null || buf.length < cols)
-			buf = new int[cols];
-		int index, rgb, alpha, ga, g;
-		if (line.imgInfo.indexed) { // palette
-			int nindexesWithAlpha = trns != null ? trns.getPalletteAlpha().length : 0;
+		int rgb, alpha, ga, g;
+		if (palette != null) { // palette
 			for (int c = 0; c < cols; c++) {
-				index = scanline[c];
-				rgb = pal.getEntry(index);
-				alpha = index < nindexesWithAlpha ? trns.getPalletteAlpha()[index] : 255;
-				buf[c] = (alpha << 24) | rgb;
+				dst[offset + c] = palette[scanline[c] & 0xFF];
 			}
 		} else if (line.imgInfo.greyscale) { // gray
+			ImageLineHelper.scaleUp(line);
 			if (trns != null) {
 				ga = ImageLineHelper.scaleUp(line.imgInfo.bitDepth, (byte) trns.getGray()) & 0xFF;
 			} else {
@@ -110,7 +138,7 @@ public class PNGUtils {
 			for (int c = 0, c2 = 0; c < cols; c++) {
 				g = scanline[c2++];
 				alpha = alphachannel ? scanline[c2++] : (g != ga ? 255 : 0);
-				buf[c] = (alpha << 24) | g | (g << 8) | (g << 16);
+				dst[offset + c] = (alpha << 24) | g | (g << 8) | (g << 16);
 			}
 		} else if (line.imgInfo.bitDepth == 16) { // true color
 			ga = trns != null ? trns.getRGB888() : -1;
@@ -118,7 +146,7 @@ public class PNGUtils {
 				rgb = ((scanline[c2++] & 0xFF00) << 8) | (scanline[c2++] & 0xFF00)
 						| ((scanline[c2++] & 0xFF00) >> 8);
 				alpha = alphachannel ? ((scanline[c2++] & 0xFF00) >> 8) : (rgb != ga ? 255 : 0);
-				buf[c] = (alpha << 24) | rgb;
+				dst[offset + c] = (alpha << 24) | rgb;
 			}
 		} else { // true color
 			ga = trns != null ? trns.getRGB888() : -1;
@@ -126,9 +154,8 @@ public class PNGUtils {
 				rgb = ((scanline[c2++]) << 16) | ((scanline[c2++]) << 8)
 						| (scanline[c2++]);
 				alpha = alphachannel ? scanline[c2++] : (rgb != ga ? 255 : 0);
-				buf[c] = (alpha << 24) | rgb;
+				dst[offset + c] = (alpha << 24) | rgb;
 			}
 		}
-		return buf;
 	}
 }
@@ -20,6 +20,7 @@ import android.app.Application;
 import android.net.Uri;
 import android.util.Log;
 
+import com.android.dx.command.dexer.DxContext;
 import com.android.dx.command.dexer.Main;
 
 import net.lingala.zip4j.ZipFile;
@@ -289,9 +290,19 @@ public class AppInstaller {
 			}
 		}
 		try {
-			Main.main(new String[]{"--no-optimize", "--core-library",
+			DxContext dxContext = new DxContext();
+			Main.Arguments arguments = new Main.Arguments(dxContext);
+			arguments.parse(new String[]{"--no-optimize", "--core-library",
+					"--num-threads=" + Runtime.getRuntime().availableProcessors(),
 					"--output=" + tmpDir + Config.MIDLET_DEX_FILE,
 					srcJar.getAbsolutePath()});
+			Main dexer = new Main(dxContext);
+			if (dexer.runDx(arguments) != 0) {
+				throw new IOException("Dexer finished with errors");
+			}
+			Log.i(TAG, "Dexing " + srcJar.getName() + ": instrument=" + dexer.getInstrumentTime() / 1000000
+					+ "ms, translate=" + dexer.getTranslateTime() / 1000000
+					+ "ms, write=" + dexer.getWriteTime() / 1000000 + "ms");
 		} catch (Throwable e) {
 			throw new ConverterException("Dexing error", e);
 		}
@@ -0,0 +1,66 @@
+package javax.microedition.lcdui;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FramePacerTest {
+	private static final int FRAMES = 15;
+
+	@Test
+	public void alwaysSlowLoopIsStillShown() throws InterruptedException {
+		FramePacer pacer = new FramePacer(50, true);
+		boolean[] presented = runLoop(pacer, 50);
+
+		int shown = 0;
+		for (int i = 0; i < FRAMES; i++) {
+			if (presented[i]) {
+				shown++;
+			} else {
+				assertTrue("two frames skipped in a row at " + i, i == 0 || presented[i - 1]);
+			}
+		}
+		assertTrue("late frames are not skipped", shown < FRAMES);
+		assertTrue("only " + shown + " frames shown", shown >= FRAMES / 2);
+	}
+
+	@Test
+	public void lateFramesAreShownWithoutFrameSkip() throws InterruptedException {
+		FramePacer pacer = new FramePacer(50, false);
+		for (boolean present : runLoop(pacer, 50)) {
+			assertTrue(present);
+		}
+	}
+
+	@Test
+	public void framesOnTimeAreShown() throws InterruptedException {
+		FramePacer pacer = new FramePacer(20, true);
+		for (boolean present : runLoop(pacer, 5)) {
+			assertTrue(present);
+		}
+	}
+
+	@Test
+	public void unlimitedRateDoesNotWait() {
+		FramePacer pacer = new FramePacer(0, true);
+		assertFalse(pacer.isEnabled());
+		long start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(pacer.awaitFrame());
+		}
+		assertTrue(System.nanoTime() - start < 100_000_000);
+	}
+
+	/**
+	 * Runs a game loop where every frame takes the given time.
+	 */
+	private static boolean[] runLoop(FramePacer pacer, long frameMillis) throws InterruptedException {
+		boolean[] presented = new boolean[FRAMES];
+		for (int i = 0; i < FRAMES; i++) {
+			Thread.sleep(frameMillis);
+			presented[i] = pacer.awaitFrame();
+		}
+		return presented;
+	}
+}
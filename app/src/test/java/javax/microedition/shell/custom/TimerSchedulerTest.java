@@ -0,0 +1,181 @@
+package javax.microedition.shell.custom;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerSchedulerTest {
+    private final List<String> order = new ArrayList<>();
+    private final List<Timer> timers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Timer timer : timers) {
+            timer.cancel();
+        }
+    }
+
+    @Test
+    public void wakeupsRunInTimeOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(5);
+        long now = System.currentTimeMillis();
+        TimerScheduler.schedule(record("60", done), now + 60);
+        TimerScheduler.schedule(record("20", done), now + 20);
+        TimerScheduler.schedule(record("30a", done), now + 30);
+        TimerScheduler.schedule(record("30b", done), now + 30);
+        TimerScheduler.schedule(record("40", done), now + 40);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertOrder("20", "30a", "30b", "40", "60");
+    }
+
+    @Test
+    public void earlierWakeupInterruptsWait() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+        TimerScheduler.schedule(record("late", null), now + 10_000);
+        TimerScheduler.schedule(record("early", done), now + 20);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertOrder("early");
+    }
+
+    @Test
+    public void tasksRunInTimeOrder() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(3);
+        Timer timer = newTimer();
+        timer.schedule(task("50", done), 50);
+        timer.schedule(task("10", done), 10);
+        timer.schedule(task("30", done), 30);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertOrder("10", "30", "50");
+    }
+
+    @Test
+    public void cancelledTaskDoesNotRun() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Timer timer = newTimer();
+        TimerTask cancelled = task("cancelled", null);
+        timer.schedule(cancelled, 20);
+        timer.schedule(task("kept", done), 60);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertOrder("kept");
+    }
+
+    @Test
+    public void purgeRemovesCancelledTasks() {
+        Timer timer = newTimer();
+        int before = TimerScheduler.getScheduledTaskCount();
+        TimerTask first = task("first", null);
+        TimerTask second = task("second", null);
+        timer.schedule(first, 10_000);
+        timer.schedule(second, 10_000);
+        assertEquals(before + 2, TimerScheduler.getScheduledTaskCount());
+
+        first.cancel();
+        assertEquals(1, timer.purge());
+        assertEquals(before + 1, TimerScheduler.getScheduledTaskCount());
+
+        timer.cancel();
+        assertEquals(before, TimerScheduler.getScheduledTaskCount());
+    }
+
+    @Test
+    public void cancelledTimerStopsRepeatingTask() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        final Timer timer = newTimer();
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() == 3) {
+                    timer.cancel();
+                    done.countDown();
+                }
+            }
+        }, 0, 5);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(3, runs.get());
+        try {
+            timer.schedule(task("after cancel", null), 0);
+        } catch (IllegalStateException e) {
+            return;
+        }
+        throw new AssertionError("a cancelled timer accepted a task");
+    }
+
+    @Test
+    public void blockedTimerDoesNotDelayOthers() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        newTimer().schedule(new TimerTask() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, 0);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        try {
+            newTimer().schedule(task("other", done), 10);
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+            assertOrder("other");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private Timer newTimer() {
+        Timer timer = new Timer();
+        timers.add(timer);
+        return timer;
+    }
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return () -> {
+            synchronized (order) {
+                order.add(name);
+            }
+            if (done != null) {
+                done.countDown();
+            }
+        };
+    }
+
+    private TimerTask task(String name, CountDownLatch done) {
+        final Runnable record = record(name, done);
+        return new TimerTask() {
+            @Override
+            public void run() {
+                record.run();
+            }
+        };
+    }
+
+    private void assertOrder(String... expected) {
+        synchronized (order) {
+            assertEquals(Arrays.asList(expected), order);
+        }
+    }
+}
@@ -67,6 +67,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -143,6 +144,14 @@ public class Main {
     /** number of errors during processing */
     private AtomicInteger errors = new AtomicInteger(0);
 
+    /**
+     * Time spent in each conversion phase, in nanoseconds. Instrumentation and
+     * translation times are summed over all translator threads.
+     */
+    private final AtomicLong instrumentTime = new AtomicLong();
+    private final AtomicLong translateTime = new AtomicLong();
+    private final AtomicLong writeTime = new AtomicLong();
+
     /** {@code non-null;} parsed command-line arguments */
     private Arguments args;
 
@@ -235,6 +244,7 @@ public class Main {
         // this array is null if no classes were defined
         byte[] outArray = null;
 
+        long writeStart = System.nanoTime();
         if (!outputDex.isEmpty() || (args.humanOutName != null)) {
             outArray = writeDex(outputDex);
 
@@ -258,10 +268,26 @@ public class Main {
             out.write(outArray);
             closeOutput(out);
         }
+        writeTime.set(System.nanoTime() - writeStart);
 
         return 0;
     }
 
+    /** @return time spent in ASM instrumentation, in nanoseconds of all threads */
+    public long getInstrumentTime() {
+        return instrumentTime.get();
+    }
+
+    /** @return time spent in parsing and translation to dex, in nanoseconds of all threads */
+    public long getTranslateTime() {
+        return translateTime.get();
+    }
+
+    /** @return time spent in writing the output dex, in nanoseconds */
+    public long getWriteTime() {
+        return writeTime.get();
+    }
+
     private static void readPathsFromFile(String fileName, Collection<String> paths) throws IOException {
         BufferedReader bfr = null;
         try {
@@ -465,20 +491,13 @@ public class Main {
             checkClassName(name);
         }
 
-        try {
-            // modify byte-code with ASM-java
-            bytes = AndroidProducer.instrument(bytes, name);
-
-            new DirectClassFileConsumer(name, bytes, null).call(
-                    new ClassParserTask(name, bytes).call());
-        } catch (ParseException ex) {
-            // handled in FileBytesConsumer
-            throw ex;
-        } catch(IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch(Exception ex) {
-            throw new RuntimeException("Exception parsing classes", ex);
-        }
+        // instrumentation, parsing and translation run in the translator pool,
+        // the results are added to the dex in the input order
+        Future<ClassDefItem> cdif = classTranslatorPool.submit(
+                new ClassTranslatorTask(name, bytes));
+        Future<Boolean> res = classDefItemConsumer.submit(new ClassDefItemConsumer(
+                name, cdif));
+        addToDexFutures.add(res);
 
         return true;
     }
@@ -1199,7 +1218,7 @@ public class Main {
          *
          * @param args {@code non-null;} the arguments
          */
-        private void parse(String[] args) {
+        public void parse(String[] args) {
             ArgumentsParser parser = new ArgumentsParser(args);
 
             parseFlags(parser);
@@ -1309,89 +1328,46 @@ public class Main {
         }
     }
 
-    /** Callable helper class to parse class bytes. */
-    private class ClassParserTask implements Callable<DirectClassFile> {
-
-        String name;
-        byte[] bytes;
-
-        private ClassParserTask(String name, byte[] bytes) {
-            this.name = name;
-            this.bytes = bytes;
-        }
-
-        @Override
-        public DirectClassFile call() throws Exception {
-            DirectClassFile cf =  parseClass(name, bytes);
-
-            return cf;
-        }
-    }
-
-    /**
-     * Callable helper class used to sequentially collect the results of
-     * the (optionally parallel) translation phase, in correct input file order.
-     * This class is also responsible for coordinating dex file rotation
-     * with the ClassDefItemConsumer class.
-     * We maintain invariant that the number of indices used in the current
-     * dex file plus the max number of indices required by classes passed to
-     * the translation phase and not yet added to the dex file, is less than
-     * or equal to the dex file limit.
-     * For each parsed file, we estimate the maximum number of indices it may
-     * require. If passing the file to the translation phase would invalidate
-     * the invariant, we wait, until the next class is added to the dex file,
-     * and then reevaluate the invariant. If there are no further classes in
-     * the translation phase, we rotate the dex file.
-     */
-    private class DirectClassFileConsumer implements Callable<Boolean> {
-
-        String name;
-        byte[] bytes;
-        Future<DirectClassFile> dcff;
-
-        private DirectClassFileConsumer(String name, byte[] bytes,
-                Future<DirectClassFile> dcff) {
-            this.name = name;
-            this.bytes = bytes;
-            this.dcff = dcff;
-        }
-
-        @Override
-        public Boolean call() throws Exception {
-
-            DirectClassFile cf = dcff.get();
-            return call(cf);
-        }
-
-        private Boolean call(DirectClassFile cf) {
-
-            // Submit class to translation phase.
-            Future<ClassDefItem> cdif = classTranslatorPool.submit(
-                    new ClassTranslatorTask(bytes, cf));
-            Future<Boolean> res = classDefItemConsumer.submit(new ClassDefItemConsumer(
-                    name, cdif));
-            addToDexFutures.add(res);
-
-            return true;
-        }
-    }
-
-
     /** Callable helper class to translate classes in parallel  */
     private class ClassTranslatorTask implements Callable<ClassDefItem> {
 
+        String name;
         byte[] bytes;
-        DirectClassFile classFile;
 
-        private ClassTranslatorTask(byte[] bytes,
-                                    DirectClassFile classFile) {
+        private ClassTranslatorTask(String name, byte[] bytes) {
+            this.name = name;
             this.bytes = bytes;
-            this.classFile = classFile;
         }
 
         @Override
         public ClassDefItem call() {
-            ClassDefItem clazz = translateClass(bytes, classFile);
+            long start = System.nanoTime();
+            byte[] instrumented;
+            try {
+                // modify byte-code with ASM-java
+                instrumented = AndroidProducer.instrument(bytes, name);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+                return null;
+            }
+            long instrumentEnd = System.nanoTime();
+            instrumentTime.addAndGet(instrumentEnd - start);
+
+            ClassDefItem clazz;
+            try {
+                DirectClassFile cf = parseClass(name, instrumented);
+                clazz = translateClass(instrumented, cf);
+            } catch (ParseException ex) {
+                context.err.println("\nPARSE ERROR:");
+                if (args.debug) {
+                    ex.printStackTrace(context.err);
+                } else {
+                    ex.printContext(context.err);
+                }
+                errors.incrementAndGet();
+                clazz = null;
+            }
+            translateTime.addAndGet(System.nanoTime() - instrumentEnd);
             return clazz;
         }
     }
@@ -1400,8 +1376,6 @@ public class Main {
      * Callable helper class used to collect the results of
      * the parallel translation phase, adding the translated classes to
      * the current dex file in correct (deterministic) file order.
-     * This class is also responsible for coordinating dex file rotation
-     * with the DirectClassFileConsumer class.
      */
     private class ClassDefItemConsumer implements Callable<Boolean> {
 
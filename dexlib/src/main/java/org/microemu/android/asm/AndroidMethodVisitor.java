@@ -71,37 +71,37 @@ public class AndroidMethodVisitor extends MethodVisitor {
 				break;
 			case "java/lang/String":
 				if (name.equals("<init>") && desc.startsWith("([B") && !desc.endsWith("Ljava/lang/String;)V")) {
-					injectGetPropertyEncoding();
-					String descriptor = new StringBuilder(desc.length() + 18)
+					injectGetEncoding();
+					String descriptor = new StringBuilder(desc.length() + 26)
 							.append(desc)
-							.insert(desc.length() - 2, "Ljava/lang/String;")
+							.insert(desc.length() - 2, "Ljava/nio/charset/Charset;")
 							.toString();
 					mv.visitMethodInsn(opcode, owner, name, descriptor, itf);
 					return;
 				} else if (name.equals("getBytes"))
 					if (desc.equals("()[B")) {
-						injectGetPropertyEncoding();
-						mv.visitMethodInsn(opcode, owner, name, "(Ljava/lang/String;)[B", itf);
+						injectGetEncoding();
+						mv.visitMethodInsn(opcode, owner, name, "(Ljava/nio/charset/Charset;)[B", itf);
 						return;
 					}
 				break;
 			case "java/io/InputStreamReader":
 				if (name.equals("<init>") && desc.equals("(Ljava/io/InputStream;)V")) {
-					injectGetPropertyEncoding();
-					mv.visitMethodInsn(opcode, owner, name, "(Ljava/io/InputStream;Ljava/lang/String;)V", itf);
+					injectGetEncoding();
+					mv.visitMethodInsn(opcode, owner, name, "(Ljava/io/InputStream;Ljava/nio/charset/Charset;)V", itf);
 					return;
 				}
 				break;
 			case "java/io/OutputStreamWriter":
 				if (name.equals("<init>") && desc.equals("(Ljava/io/OutputStream;)V")) {
-					injectGetPropertyEncoding();
-					mv.visitMethodInsn(opcode, owner, name, "(Ljava/io/OutputStream;Ljava/lang/String;)V", itf);
+					injectGetEncoding();
+					mv.visitMethodInsn(opcode, owner, name, "(Ljava/io/OutputStream;Ljava/nio/charset/Charset;)V", itf);
 					return;
 				}
 				break;
 			case "java/io/ByteArrayOutputStream":
 				if (name.equals("toString") && desc.equals("()Ljava/lang/String;")) {
-					injectGetPropertyEncoding();
+					injectGetEncodingName();
 					mv.visitMethodInsn(opcode, owner, name, "(Ljava/lang/String;)Ljava/lang/String;", itf);
 					return;
 				}
@@ -109,7 +109,7 @@ public class AndroidMethodVisitor extends MethodVisitor {
 			case "java/io/PrintStream":
 				if (name.equals("<init>") && desc.equals("(Ljava/io/OutputStream;)V")) {
 					mv.visitInsn(ICONST_0);
-					injectGetPropertyEncoding();
+					injectGetEncodingName();
 					mv.visitMethodInsn(opcode, owner, name, "(Ljava/io/OutputStream;ZLjava/lang/String;)V", itf);
 					return;
 				}
@@ -136,10 +136,15 @@ public class AndroidMethodVisitor extends MethodVisitor {
 		mv.visitMethodInsn(opcode, owner, name, desc, itf);
 	}
 
-	private void injectGetPropertyEncoding() {
-		mv.visitLdcInsn("microedition.encoding");
-		mv.visitMethodInsn(INVOKESTATIC, "java/lang/System", "getProperty",
-				"(Ljava/lang/String;)Ljava/lang/String;", false);
+	private void injectGetEncoding() {
+		mv.visitMethodInsn(INVOKESTATIC, "javax/microedition/shell/MidletSystem", "getEncoding",
+				"()Ljava/nio/charset/Charset;", false);
+	}
+
+	/** For methods that accept only a charset name on Android */
+	private void injectGetEncodingName() {
+		mv.visitMethodInsn(INVOKESTATIC, "javax/microedition/shell/MidletSystem", "getEncodingName",
+				"()Ljava/lang/String;", false);
 	}
 
 	@Override